@@ -1,209 +1,714 @@
 package game;
 
+import game.utils.BufferManager;
 import game.utils.FaceDirection;
 import game.utils.GenerationEngine;
+import game.utils.NativeLongBuffer;
 import lombok.Getter;
 import lombok.Setter;
 import org.joml.Vector3i;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Chunk {
     public static final int SIZE = 32;
-    public static final int BORDER = 1;
-    private static final int TOTAL_BLOCKS = (SIZE + 2 * BORDER) * (SIZE + 2 * BORDER) * (SIZE + 2 * BORDER);
+    public static final int TOTAL_BLOCKS = SIZE * SIZE * SIZE;
+    public static final int SECTIONS_PER_AXIS = SIZE / ChunkSection.SIZE;
 
+    public static final ChunkPool POOL = new ChunkPool(Integer.getInteger("mineshit.chunkPoolSize", 64));
+    // Store generated chunks as column runs when every column fits in ColumnStorage.MAX_RUNS_PER_COLUMN runs
+    public static final boolean COLUMN_STORAGE = Boolean.getBoolean("mineshit.columnStorage");
+    // Put a pillar of test blocks through every generated chunk to show the chunk grid. No chunk is uniform then
+    public static final boolean CHUNK_MARKERS = Boolean.getBoolean("mineshit.chunkMarkers");
+
+    private static final FaceDirection[] FACE_DIRECTIONS = FaceDirection.values();
+    private static final ThreadLocal<short[]> BLOCK_BUFFER = ThreadLocal.withInitial(() -> new short[TOTAL_BLOCKS]);
+    private static final ThreadLocal<short[]> SECTION_BUFFER = ThreadLocal.withInitial(() -> new short[ChunkSection.VOLUME]);
+
+    private final ChunkSection[] sections;
+    private ColumnStorage columns; // Replaces the sections when not null
     @Getter
-    private boolean isUniform;
+    private ChunkSummary summary = new ChunkSummary();
+    private final AtomicBoolean meshRequested = new AtomicBoolean(false);
+
+    // Writes and snapshots are serialized on this lock; readers of a snapshot never take it
+    private final Object storageLock = new Object();
+    // Bumped by every write, so that results computed from an older snapshot can be told apart
     @Getter
-    private short uniformBlockId;
-    private List<Short> palette;
-    private int bitsPerBlock;
-    private long[] data;
+    private volatile long version;
+    private boolean columnsShared;
+    private boolean summaryShared;
+
+    private static final AtomicInteger NEXT_MESH_ID = new AtomicInteger();
 
     @Getter
     private final Vector3i position;
+    // Level of detail: 0 for a chunk, L for a region of 2^L chunks per axis whose blocks are cells of 2^L blocks
     @Getter
-    private List<Integer> encodedData;
+    private final int lodLevel;
+    // Identifies the mesh in the GPU buffers, positions being shared between the levels
+    @Getter
+    private final int meshId = NEXT_MESH_ID.getAndIncrement();
+    @Getter
+    private NativeLongBuffer encodedData;
+    private int uploadedSlots;                                    // Face slots of the GPU allocation, 0 if none
+    private final int[] dirtySlots = {Integer.MAX_VALUE, 0};      // Slots patched since the last upload
+    private final int[] directionStarts = new int[FACE_DIRECTIONS.length + 1];         // Direction ranges of the face buffer
+    private final int[] uploadedDirectionStarts = new int[FACE_DIRECTIONS.length + 1]; // Direction ranges of the GPU allocation
 
     //0 : GOOD - 1 : ADD - 2 : REMOVE - 3 : DIRTY
+    private final AtomicInteger state = new AtomicInteger(0);
+    // Set once by free(), under the storage lock; no mesh is installed afterwards
+    private volatile boolean freed;
+    // Time the chunk reached its current pipeline stage, for the stage metrics
     @Getter @Setter
-    private int state = 0;
+    private volatile long stageStartTime;
 
     public Chunk(Vector3i position) {
-        this.position = position;
-        this.isUniform = true;
-        this.uniformBlockId = 0;
-        initializePaletteAndData();
+        this(position, 0);
+    }
+
+    /**
+     * Creates a chunk, or a level of detail region when {@code lodLevel} is above 0.
+     *
+     * @param position Chunk grid position, a multiple of {@code 1 << lodLevel} for a region.
+     * @param lodLevel Level of detail, see {@link #getLodLevel()}.
+     */
+    public Chunk(Vector3i position, int lodLevel) {
+        this(position, lodLevel, (short) 0);
         generateData();
 
-        for(int i = 0; i < 32; i++){
-            setBlock(15,i,15,(short)4);
+        if (lodLevel == 0 && CHUNK_MARKERS) {
+            for(int i = 0; i < 32; i++){
+                setBlock(15,i,15,(short)4);
+            }
         }
+        stageStartTime = System.nanoTime();
+    }
 
-        generateMesh();
+    /**
+     * Creates a chunk, or a level of detail region, filled with a single block id without running the
+     * generator. Used where the terrain is known to be above or far below the chunk, see
+     * {@link GenerationEngine#getUniformBlock}.
+     *
+     * @param position Chunk grid position, a multiple of {@code 1 << lodLevel} for a region.
+     * @param lodLevel Level of detail, see {@link #getLodLevel()}.
+     * @param blockId  Block id of every block.
+     */
+    public Chunk(Vector3i position, int lodLevel, short blockId) {
+        this.position = position;
+        this.lodLevel = lodLevel;
+        this.sections = new ChunkSection[SECTIONS_PER_AXIS * SECTIONS_PER_AXIS * SECTIONS_PER_AXIS];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = new ChunkSection(blockId);
+        }
+        summary.fill(blockId != 0);
+        stageStartTime = System.nanoTime();
     }
 
     private void generateData() {
-        GenerationEngine.generateChunkData(this);
+        if (lodLevel > 0) {
+            GenerationEngine.generateLodData(this);
+        } else {
+            GenerationEngine.generateChunkData(this);
+        }
+    }
+
+    public int getState() {
+        return state.get();
     }
 
-    private void generateMesh() {
-        encodedData = new ArrayList<>();
-        for (int x = 0; x < SIZE; x++) {
-            for (int y = 0; y < SIZE; y++) {
-                for (int z = 0; z < SIZE; z++) {
-                    short block = getBlock(x, y, z);
-                    if (block == 0) continue;
+    public void setState(int state) {
+        this.state.set(state);
+    }
 
-                    for (FaceDirection face : FaceDirection.values()) {
-                        int neighborX = x + face.getOffsetX();
-                        int neighborY = y + face.getOffsetY();
-                        int neighborZ = z + face.getOffsetZ();
+    /**
+     * Sets the state only if it still is the expected one, so that a state set concurrently is not overwritten.
+     *
+     * @return False if the state changed in the meantime.
+     */
+    public boolean compareAndSetState(int expected, int state) {
+        return this.state.compareAndSet(expected, state);
+    }
 
-                        boolean isFaceVisible = isFaceExposed(neighborX, neighborY, neighborZ);
-                        if (isFaceVisible) {
-                            encodedData.add(encodeFaceData(x, y, z, (byte) block, face));
-                        }
-                    }
+    /**
+     * Flags the chunk for the upload of its new mesh, unless it is being unloaded or already freed.
+     *
+     * @return False if the chunk is being unloaded or freed.
+     */
+    public boolean markMeshed() {
+        int current;
+        do {
+            current = state.get();
+            if (current == 2 || freed) return false;
+        } while (!state.compareAndSet(current, 1));
+        return true;
+    }
+
+    public boolean isFreed() {
+        return freed;
+    }
+
+    /**
+     * Gets the size of a block of this chunk in world blocks, 1 except for level of detail regions.
+     */
+    public int getCellSize() {
+        return 1 << lodLevel;
+    }
+
+    /**
+     * Marks the chunk as queued for meshing.
+     *
+     * @return True if the caller is the first to request the mesh.
+     */
+    public boolean requestMesh() {
+        return meshRequested.compareAndSet(false, true);
+    }
+
+    public boolean isMeshed() {
+        return encodedData != null;
+    }
+
+    /**
+     * Meshes a snapshot of the chunk and of its neighbors, then installs the faces unless the chunk
+     * was edited or freed in the meantime. Edits are never blocked while the mesh is built.
+     *
+     * @param neighbors Neighbor chunks laid out as described in {@link ChunkMesher#getNeighborOffset}. The array
+     *                  or any entry may be null, in which case that neighbor is treated as air. Ignored by level
+     *                  of detail regions, whose borders come from the generator.
+     * @return False if the result was stale and has been discarded.
+     */
+    public boolean generateMesh(Chunk[] neighbors) {
+        ChunkSnapshot[] neighborSnapshots = new ChunkSnapshot[ChunkMesher.NEIGHBOR_COUNT];
+        ChunkSnapshot snapshot = snapshot();
+        try {
+            if (lodLevel > 0) {
+                NativeLongBuffer faces = POOL.takeFaceBuffer();
+                ChunkMesher.mesh(faces, snapshot, GenerationEngine.generateLodPlanes(this));
+                return applyMesh(faces, snapshot.getVersion());
+            }
+            if (neighbors != null) {
+                for (int i = 0; i < neighbors.length; i++) {
+                    if (neighbors[i] != null) neighborSnapshots[i] = neighbors[i].snapshot();
                 }
             }
+            NativeLongBuffer faces = POOL.takeFaceBuffer();
+            ChunkMesher.mesh(faces, snapshot, neighborSnapshots);
+            return applyMesh(faces, snapshot.getVersion());
+        } finally {
+            snapshot.close();
+            for (ChunkSnapshot neighborSnapshot : neighborSnapshots) {
+                if (neighborSnapshot != null) neighborSnapshot.close();
+            }
         }
     }
 
-    private boolean isFaceExposed(int x, int y, int z) {
-        if (x >= -BORDER && x < SIZE + BORDER && y >= -BORDER && y < SIZE + BORDER && z >= -BORDER && z < SIZE + BORDER) {
-            return getBlock(x, y, z) == 0;
+    /**
+     * Installs a face list built from a snapshot.
+     *
+     * @param faces       Faces built from the snapshot.
+     * @param meshVersion Version of the snapshot.
+     * @return False if the chunk changed since the snapshot or was freed, in which case the faces are dropped.
+     */
+    public boolean applyMesh(NativeLongBuffer faces, long meshVersion) {
+        synchronized (storageLock) {
+            if (freed || meshVersion != version) {
+                POOL.recycleFaceBuffer(faces);
+                return false;
+            }
+            ChunkMesher.partition(faces, directionStarts);
+            encodedData = faces;
+            return true;
         }
-        return true;
+    }
+
+    /**
+     * Updates the mesh after a block edit in this chunk or on the boundary of a neighbor, see {@link ChunkMesher#patch}.
+     * If the chunk has no mesh yet, a mesh being built from the old block is discarded instead.
+     *
+     * @param x         Local X of the edited block, -1 or {@link #SIZE} for an edit in a neighbor.
+     * @param y         Local Y of the edited block, same range.
+     * @param z         Local Z of the edited block, same range.
+     * @param neighbors Neighbor chunks laid out as described in {@link ChunkMesher#getNeighborOffset}, null entries being air.
+     * @return False if the patched faces no longer fit in the uploaded slots and the chunk needs a full upload.
+     */
+    public boolean patchMesh(int x, int y, int z, Chunk[] neighbors) {
+        synchronized (storageLock) {
+            NativeLongBuffer faces = encodedData;
+            if (faces == null) {
+                version++;
+                return true;
+            }
+            if (!ChunkMesher.patch(faces, this, neighbors, x, y, z, directionStarts, dirtySlots)) {
+                // A direction ran out of empty slots: lay the faces out again, with new room for the next edits
+                ChunkMesher.partition(faces, directionStarts);
+                return false;
+            }
+            return faces.size() <= uploadedSlots;
+        }
+    }
+
+    /**
+     * Uploads the whole mesh, replacing the previous allocation of the chunk if any.
+     *
+     * @param buffer Instance buffer of the world.
+     * @param id     Allocation id of the chunk.
+     */
+    public void uploadMesh(BufferManager buffer, int id) {
+        synchronized (storageLock) {
+            buffer.removeData(id);
+            NativeLongBuffer faces = encodedData;
+            uploadedSlots = 0;
+            Arrays.fill(uploadedDirectionStarts, 0);
+            if (faces != null && !faces.isEmpty()) {
+                buffer.addData(id, faces.asByteBuffer());
+                uploadedSlots = faces.size();
+                System.arraycopy(directionStarts, 0, uploadedDirectionStarts, 0, directionStarts.length);
+            }
+            dirtySlots[0] = Integer.MAX_VALUE;
+            dirtySlots[1] = 0;
+        }
+    }
+
+    /**
+     * Uploads the slots changed by {@link #patchMesh} since the last upload, in place.
+     *
+     * @param buffer Instance buffer of the world.
+     * @param id     Allocation id of the chunk.
+     */
+    public void uploadMeshPatch(BufferManager buffer, int id) {
+        synchronized (storageLock) {
+            NativeLongBuffer faces = encodedData;
+            if (faces == null || dirtySlots[0] >= dirtySlots[1] || dirtySlots[1] > uploadedSlots) return;
+            buffer.updateData(id, dirtySlots[0] * Long.BYTES, faces.asByteBuffer(dirtySlots[0], dirtySlots[1]));
+            dirtySlots[0] = Integer.MAX_VALUE;
+            dirtySlots[1] = 0;
+        }
+    }
+
+    /**
+     * Gets the first face slot of a direction in the uploaded mesh, relative to the chunk allocation.
+     */
+    public int getUploadedDirectionStart(FaceDirection face) {
+        synchronized (storageLock) {
+            return uploadedDirectionStarts[face.ordinal()];
+        }
+    }
+
+    /**
+     * Gets the number of face slots of a direction in the uploaded mesh, empty slots included.
+     */
+    public int getUploadedDirectionSize(FaceDirection face) {
+        synchronized (storageLock) {
+            return uploadedDirectionStarts[face.ordinal() + 1] - uploadedDirectionStarts[face.ordinal()];
+        }
+    }
+
+    /**
+     * Checks from the summaries alone whether the chunk has no visible face: it is empty, or it is solid
+     * and every neighbor plane facing it is solid too.
+     *
+     * @param neighbors Neighbor chunks indexed by {@link FaceDirection#ordinal()}, null entries being air.
+     */
+    public boolean canSkipMesh(Chunk[] neighbors) {
+        ChunkSummary[] neighborSummaries = new ChunkSummary[FACE_DIRECTIONS.length];
+        if (neighbors != null) {
+            for (int i = 0; i < Math.min(neighbors.length, neighborSummaries.length); i++) {
+                neighborSummaries[i] = neighbors[i] != null ? neighbors[i].summary : null;
+            }
+        }
+        return ChunkMesher.canSkipMesh(summary, neighborSummaries);
+    }
+
+    /**
+     * Takes an immutable view of the current content. Sections, column runs and summary are shared until
+     * the chunk writes to them, at which point the chunk writes to a copy instead.
+     * The snapshot must be closed once read.
+     */
+    public ChunkSnapshot snapshot() {
+        synchronized (storageLock) {
+            for (ChunkSection section : sections) {
+                section.retain();
+            }
+            columnsShared = columns != null;
+            summaryShared = true;
+            return new ChunkSnapshot(position, version, sections.clone(), columns, summary);
+        }
+    }
+
+    /**
+     * Gets a section that can be written, copying it first if a snapshot still reads it.
+     *
+     * @param keepContent Whether the copy needs the current blocks, or will be overwritten anyway.
+     */
+    private ChunkSection writableSection(int index, boolean keepContent) {
+        ChunkSection section = sections[index];
+        if (!section.isShared()) {
+            return section;
+        }
+        ChunkSection copy = keepContent ? section.copy() : new ChunkSection((short) 0);
+        section.release();
+        sections[index] = copy;
+        return copy;
+    }
+
+    private ColumnStorage writableColumns() {
+        if (columnsShared) {
+            columns = columns.copy();
+            columnsShared = false;
+        }
+        return columns;
+    }
+
+    private ChunkSummary writableSummary() {
+        if (summaryShared) {
+            summary = summary.copy();
+            summaryShared = false;
+        }
+        return summary;
     }
 
     public short getBlock(int x, int y, int z) {
-        int blockIndex = getBlockIndex(x + BORDER, y + BORDER, z + BORDER);
-        if (isUniform) {
-            return uniformBlockId;
+        return readBlock(sections, columns, x, y, z);
+    }
+
+    static short readBlock(ChunkSection[] sections, ColumnStorage columns, int x, int y, int z) {
+        if (columns != null) {
+            return columns.get(x, y, z);
         }
-        int paletteIndex = readBlockData(blockIndex, data, bitsPerBlock);
-        return palette.get(paletteIndex);
+        ChunkSection section = sections[getSectionIndex(x >> ChunkSection.SHIFT, y >> ChunkSection.SHIFT, z >> ChunkSection.SHIFT)];
+        return section.get(ChunkSection.getIndex(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK));
     }
 
     public void setBlock(int x, int y, int z, short blockId) {
-        if (isUniform) {
-            if (blockId == uniformBlockId) return;
+        synchronized (storageLock) {
+            short oldBlock = getBlock(x, y, z);
+            if (oldBlock == blockId) return;
+
+            if (columns == null || !writableColumns().set(x, y, z, blockId)) {
+                convertToSections();
+                int sectionIndex = getSectionIndex(x >> ChunkSection.SHIFT, y >> ChunkSection.SHIFT, z >> ChunkSection.SHIFT);
+                writableSection(sectionIndex, true).set(
+                        ChunkSection.getIndex(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK), blockId);
+            }
 
-            isUniform = false;
-            initializePaletteAndData();
-            fillUniformBlock();
+            if ((oldBlock != 0) != (blockId != 0)) {
+                writableSummary().onBlockChanged(this, x, y, z, blockId != 0);
+            }
+            version++;
         }
+    }
 
-        int paletteIndex = palette.indexOf(blockId);
-        if (paletteIndex == -1) {
-            palette.add(blockId);
-            paletteIndex = palette.size() - 1;
-            ensureCapacity();
+    /**
+     * Fills a vertical run of blocks in one column.
+     *
+     * @param x       Local X of the column.
+     * @param z       Local Z of the column.
+     * @param fromY   First local Y to fill (inclusive).
+     * @param toY     Last local Y to fill (exclusive).
+     * @param blockId Block id to write.
+     */
+    public void fillColumn(int x, int z, int fromY, int toY, short blockId) {
+        fillBox(x, fromY, z, x + 1, toY, z + 1, blockId);
+    }
+
+    /**
+     * Fills an axis-aligned box of blocks. Bounds are local coordinates, min inclusive and max exclusive,
+     * and are clamped to the chunk. Sections fully covered by the box become uniform.
+     */
+    public void fillBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, short blockId) {
+        minX = Math.max(minX, 0);
+        minY = Math.max(minY, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, SIZE);
+        maxY = Math.min(maxY, SIZE);
+        maxZ = Math.min(maxZ, SIZE);
+        if (minX >= maxX || minY >= maxY || minZ >= maxZ) return;
+
+        synchronized (storageLock) {
+            convertToSections();
+            writableSummary().onBoxFilled(this, minX, minY, minZ, maxX, maxY, maxZ, blockId != 0);
+            for (int sectionY = minY >> ChunkSection.SHIFT; sectionY <= (maxY - 1) >> ChunkSection.SHIFT; sectionY++) {
+                for (int sectionZ = minZ >> ChunkSection.SHIFT; sectionZ <= (maxZ - 1) >> ChunkSection.SHIFT; sectionZ++) {
+                    for (int sectionX = minX >> ChunkSection.SHIFT; sectionX <= (maxX - 1) >> ChunkSection.SHIFT; sectionX++) {
+                        writableSection(getSectionIndex(sectionX, sectionY, sectionZ), true).fillBox(
+                                sectionMin(minX, sectionX), sectionMin(minY, sectionY), sectionMin(minZ, sectionZ),
+                                sectionMax(maxX, sectionX), sectionMax(maxY, sectionY), sectionMax(maxZ, sectionZ),
+                                blockId);
+                    }
+                }
+            }
+            version++;
         }
+    }
 
-        int blockIndex = getBlockIndex(x + BORDER, y + BORDER, z + BORDER);
-        writeBlockData(blockIndex, paletteIndex, data, bitsPerBlock);
+    private static int sectionMin(int min, int section) {
+        return Math.max(min - (section << ChunkSection.SHIFT), 0);
     }
 
-    public void fillChunk(short blockId) {
-        if (isUniform && uniformBlockId == blockId) {
-            return;
+    private static int sectionMax(int max, int section) {
+        return Math.min(max - (section << ChunkSection.SHIFT), ChunkSection.SIZE);
+    }
+
+    /**
+     * Replaces the whole chunk content with pre-built block ids.
+     * With {@link #COLUMN_STORAGE}, the chunk is stored as column runs when every column is short enough.
+     * Otherwise each section rebuilds its palette and packs its bit array in a single pass.
+     *
+     * @param blocks Block ids laid out as {@link #getBlockIndex(int, int, int)}, {@link #TOTAL_BLOCKS} long.
+     */
+    public void setBlocks(short[] blocks) {
+        synchronized (storageLock) {
+            writableSummary().rebuild(blocks);
+            if (!COLUMN_STORAGE || !trySetColumnBlocks(blocks)) {
+                columns = null;
+                setSectionBlocks(blocks);
+            }
+            version++;
         }
-        isUniform = true;
-        uniformBlockId = blockId;
-        palette = null;
-        data = null;
     }
 
+    /**
+     * Switches the chunk to column runs.
+     *
+     * @return False if a column has too many runs or the chunk is a single block id, in which case
+     *         the paletted sections are kept.
+     */
+    public boolean convertToColumns() {
+        synchronized (storageLock) {
+            return columns != null || trySetColumnBlocks(getBlocks(BLOCK_BUFFER.get()));
+        }
+    }
 
-    private void fillUniformBlock() {
-        int uniformPaletteIndex = palette.indexOf(uniformBlockId);
-        for (int i = 0; i < TOTAL_BLOCKS; i++) {
-            writeBlockData(i, uniformPaletteIndex, data, bitsPerBlock);
+    /**
+     * Switches the chunk back to paletted sections. Does nothing if it already uses them.
+     */
+    public void convertToSections() {
+        synchronized (storageLock) {
+            if (columns == null) return;
+            short[] blocks = columns.getBlocks(BLOCK_BUFFER.get());
+            columns = null;
+            setSectionBlocks(blocks);
         }
     }
 
-    private void initializePaletteAndData() {
-        palette = new ArrayList<>();
-        bitsPerBlock = 4;
-        int totalBits = TOTAL_BLOCKS * bitsPerBlock;
-        int dataLength = (totalBits + 63) / 64;
-        data = new long[dataLength];
+    public boolean isColumnStorage() {
+        return columns != null;
+    }
 
-        if (!palette.contains((short) 0)) {
-            palette.add((short) 0);
+    private boolean trySetColumnBlocks(short[] blocks) {
+        ColumnStorage columnStorage = ColumnStorage.fromBlocks(blocks, ColumnStorage.MAX_RUNS_PER_COLUMN);
+        // A single block id is cheaper as uniform sections
+        if (columnStorage == null || columnStorage.isUniform()) return false;
+        for (int i = 0; i < sections.length; i++) {
+            writableSection(i, false).free();
         }
+        columns = columnStorage;
+        columnsShared = false;
+        return true;
+    }
+
+    private void setSectionBlocks(short[] blocks) {
+        short[] sectionBlocks = SECTION_BUFFER.get();
 
-        if (!palette.contains(uniformBlockId)) {
-            palette.add(uniformBlockId);
+        for (int sectionY = 0; sectionY < SECTIONS_PER_AXIS; sectionY++) {
+            for (int sectionZ = 0; sectionZ < SECTIONS_PER_AXIS; sectionZ++) {
+                for (int sectionX = 0; sectionX < SECTIONS_PER_AXIS; sectionX++) {
+                    int originX = sectionX << ChunkSection.SHIFT;
+                    int originY = sectionY << ChunkSection.SHIFT;
+                    int originZ = sectionZ << ChunkSection.SHIFT;
+
+                    for (int y = 0; y < ChunkSection.SIZE; y++) {
+                        for (int z = 0; z < ChunkSection.SIZE; z++) {
+                            System.arraycopy(blocks, getBlockIndex(originX, originY + y, originZ + z),
+                                    sectionBlocks, ChunkSection.getIndex(0, y, z), ChunkSection.SIZE);
+                        }
+                    }
+                    writableSection(getSectionIndex(sectionX, sectionY, sectionZ), false).setBlocks(sectionBlocks);
+                }
+            }
         }
     }
 
-    private void ensureCapacity() {
-        int requiredBits = Math.max(4, 32 - Integer.numberOfLeadingZeros(palette.size() - 1));
-        if (requiredBits != bitsPerBlock) {
-            bitsPerBlock = requiredBits;
-            reallocateData();
+    /**
+     * Decodes the whole chunk content into a flat array.
+     * Uniform sections are filled directly, paletted ones are decoded one 64-bit word at a time.
+     *
+     * @param blocks Destination array of at least {@link #TOTAL_BLOCKS} entries, laid out as {@link #getBlockIndex(int, int, int)}.
+     * @return The destination array.
+     */
+    public short[] getBlocks(short[] blocks) {
+        return readBlocks(sections, columns, blocks);
+    }
+
+    static short[] readBlocks(ChunkSection[] sections, ColumnStorage columns, short[] blocks) {
+        if (columns != null) {
+            return columns.getBlocks(blocks);
+        }
+        short[] sectionBlocks = SECTION_BUFFER.get();
+
+        for (int sectionY = 0; sectionY < SECTIONS_PER_AXIS; sectionY++) {
+            for (int sectionZ = 0; sectionZ < SECTIONS_PER_AXIS; sectionZ++) {
+                for (int sectionX = 0; sectionX < SECTIONS_PER_AXIS; sectionX++) {
+                    ChunkSection section = sections[getSectionIndex(sectionX, sectionY, sectionZ)];
+                    int originX = sectionX << ChunkSection.SHIFT;
+                    int originY = sectionY << ChunkSection.SHIFT;
+                    int originZ = sectionZ << ChunkSection.SHIFT;
+
+                    if (!section.isUniform()) {
+                        section.getBlocks(sectionBlocks);
+                    }
+                    for (int y = 0; y < ChunkSection.SIZE; y++) {
+                        for (int z = 0; z < ChunkSection.SIZE; z++) {
+                            int rowIndex = getBlockIndex(originX, originY + y, originZ + z);
+                            if (section.isUniform()) {
+                                Arrays.fill(blocks, rowIndex, rowIndex + ChunkSection.SIZE, section.getUniformBlockId());
+                            } else {
+                                System.arraycopy(sectionBlocks, ChunkSection.getIndex(0, y, z), blocks, rowIndex, ChunkSection.SIZE);
+                            }
+                        }
+                    }
+                }
+            }
         }
+        return blocks;
     }
 
-    private void reallocateData() {
-        int totalBits = TOTAL_BLOCKS * bitsPerBlock;
-        int dataLength = (totalBits + 63) / 64;
-        long[] newData = new long[dataLength];
+    /**
+     * Releases the block storage and the face list once the chunk is unloaded, handing the arrays to {@link #POOL}.
+     * Sections still read by a snapshot are released when the snapshot is closed. The chunk reads as air afterwards,
+     * and meshes built from it are dropped by {@link #applyMesh}.
+     */
+    public void free() {
+        synchronized (storageLock) {
+            columns = null;
+            for (int i = 0; i < sections.length; i++) {
+                sections[i].release();
+                sections[i] = new ChunkSection((short) 0);
+            }
+            summary = new ChunkSummary();
+            summaryShared = false;
+            version++;
+            freed = true;
+
+            NativeLongBuffer faces = encodedData;
+            if (faces != null) {
+                encodedData = null;
+                uploadedSlots = 0;
+                POOL.recycleFaceBuffer(faces);
+            }
+        }
+    }
 
-        for (int i = 0; i < TOTAL_BLOCKS; i++) {
-            int paletteIndex = readBlockData(i, data, bitsPerBlock);
-            writeBlockData(i, paletteIndex, newData, bitsPerBlock);
+    public void fillChunk(short blockId) {
+        synchronized (storageLock) {
+            columns = null;
+            writableSummary().fill(blockId != 0);
+            for (int i = 0; i < sections.length; i++) {
+                writableSection(i, false).fill(blockId);
+            }
+            version++;
         }
+    }
 
-        data = newData;
+    /**
+     * Checks whether every section is uniform with the same block id.
+     */
+    public boolean isUniform() {
+        return isUniform(sections, columns);
     }
 
-    private int getBlockIndex(int x, int y, int z) {
-        return x + (z * (SIZE + 2 * BORDER)) + (y * (SIZE + 2 * BORDER) * (SIZE + 2 * BORDER));
+    public short getUniformBlockId() {
+        return getUniformBlockId(sections, columns);
     }
 
-    private void writeBlockData(int blockIndex, int paletteIndex, long[] dataArray, int bitsPerBlock) {
-        int bitIndex = blockIndex * bitsPerBlock;
-        int arrayIndex = bitIndex / 64;
-        int bitOffset = bitIndex % 64;
+    static boolean isUniform(ChunkSection[] sections, ColumnStorage columns) {
+        if (columns != null) {
+            return columns.isUniform();
+        }
+        short blockId = sections[0].getUniformBlockId();
+        for (ChunkSection section : sections) {
+            if (!section.isUniform() || section.getUniformBlockId() != blockId) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        long mask = ((1L << bitsPerBlock) - 1L) << bitOffset;
-        dataArray[arrayIndex] = (dataArray[arrayIndex] & ~mask) | ((long) paletteIndex << bitOffset);
+    static short getUniformBlockId(ChunkSection[] sections, ColumnStorage columns) {
+        if (columns != null) {
+            return columns.getUniformBlockId();
+        }
+        return sections[0].getUniformBlockId();
+    }
 
-        if (64 - bitOffset < bitsPerBlock) {
-            int remainingBits = bitsPerBlock - (64 - bitOffset);
-            mask = (1L << remainingBits) - 1;
-            dataArray[arrayIndex + 1] = (dataArray[arrayIndex + 1] & ~mask) | ((long) paletteIndex >> (bitsPerBlock - remainingBits));
+    /**
+     * Estimates the heap held by the chunk: the chunk object itself, its sections and its face list.
+     */
+    public long estimateRetainedBytes() {
+        long bytes = estimateOverheadBytes() + estimateMeshBytes();
+        ColumnStorage columnStorage = columns;
+        if (columnStorage != null) {
+            bytes += columnStorage.estimateRetainedBytes();
+        }
+        for (ChunkSection section : sections) {
+            bytes += section.estimateRetainedBytes();
         }
+        return bytes;
     }
 
-    private int readBlockData(int blockIndex, long[] dataArray, int bitsPerBlock) {
-        int bitIndex = blockIndex * bitsPerBlock;
-        int arrayIndex = bitIndex / 64;
-        int bitOffset = bitIndex % 64;
+    /**
+     * Adds the chunk to a world memory report.
+     */
+    public void collectMemory(MemoryReport report) {
+        report.addChunk(isUniform(), estimateOverheadBytes());
+        ColumnStorage columnStorage = columns;
+        if (columnStorage != null) {
+            report.addColumns(columnStorage.getRunCount(), columnStorage.estimateRetainedBytes());
+        }
+        for (ChunkSection section : sections) {
+            report.addSection(section.getBitsPerBlock(), section.estimateRetainedBytes());
+        }
+        NativeLongBuffer faces = encodedData;
+        if (faces != null) {
+            report.addMesh(faces.size(), estimateMeshBytes());
+        }
+    }
 
-        long value = (dataArray[arrayIndex] >>> bitOffset) & ((1L << bitsPerBlock) - 1);
+    private long estimateOverheadBytes() {
+        return MemoryReport.objectBytes(7 * MemoryReport.REFERENCE_BYTES + Integer.BYTES + Long.BYTES + 2)
+                + summary.estimateRetainedBytes()
+                + MemoryReport.arrayBytes(sections.length, MemoryReport.REFERENCE_BYTES)
+                + MemoryReport.objectBytes(3 * Integer.BYTES)  // Position
+                + MemoryReport.objectBytes(Integer.BYTES)      // Mesh request flag
+                + MemoryReport.objectBytes(0);                 // Storage lock
+    }
 
-        if (64 - bitOffset < bitsPerBlock) {
-            int remainingBits = bitsPerBlock - (64 - bitOffset);
-            value |= (dataArray[arrayIndex + 1] & ((1L << remainingBits) - 1)) << (bitsPerBlock - remainingBits);
+    /**
+     * Estimates the face buffer size, its native capacity included.
+     */
+    private long estimateMeshBytes() {
+        NativeLongBuffer faces = encodedData;
+        if (faces == null) {
+            return 0;
         }
-
-        return (int) value;
+        return MemoryReport.objectBytes(Long.BYTES + 2 * Integer.BYTES) + (long) faces.getCapacity() * Long.BYTES;
     }
 
-    private int encodeFaceData(int x, int y, int z, byte typeId, FaceDirection faceDir) {
-        int encoded = 0;
-        encoded |= (x & 0x1F);
-        encoded |= (y & 0x1F) << 5;
-        encoded |= (z & 0x1F) << 10;
-        encoded |= faceDir.ordinal() << 15;
-        encoded |= (typeId & 0xFF) << 18;
-        return encoded;
+    static int getSectionIndex(int sectionX, int sectionY, int sectionZ) {
+        return sectionX + (sectionZ * SECTIONS_PER_AXIS) + (sectionY * SECTIONS_PER_AXIS * SECTIONS_PER_AXIS);
     }
 
+    /**
+     * Gets the flat index of a block in the chunk grid.
+     *
+     * @param x Local X.
+     * @param y Local Y.
+     * @param z Local Z.
+     * @return The flat block index.
+     */
+    public static int getBlockIndex(int x, int y, int z) {
+        return x + (z * SIZE) + (y * SIZE * SIZE);
+    }
 }
@@ -0,0 +1,1137 @@
+package game;
+
+import game.utils.FaceDirection;
+import game.utils.NativeLongBuffer;
+import org.joml.Vector3i;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds the face list of a chunk snapshot. Faces on the chunk boundary are culled against the neighbor snapshots.
+ * Paletted chunks are meshed from a flat copy of the chunk surrounded by the neighbor boundary planes,
+ * column chunks straight from their runs.
+ * <p>
+ * The binary and greedy modes work on 32-bit occupancy rows instead: one int per (y, z) row of the chunk,
+ * bit x set for a solid block, so the exposed faces of 32 blocks are found with a shift and an AND-NOT.
+ * <p>
+ * Every face carries its ambient occlusion in the high int, read from the same occupancy rows: the 3x3 cells
+ * in front of the face form a 9-bit index into a table holding the occlusion of its four corners.
+ */
+public class ChunkMesher {
+
+    public enum Mode {
+        /** One face per exposed block side, found block by block. Column chunks are meshed from their runs. */
+        VOXEL,
+        /** Same faces as {@link #VOXEL}, found 32 blocks at a time from occupancy bitmasks. */
+        BINARY,
+        /** Coplanar faces of the same block type merged into quads of up to {@link #MAX_QUAD_SIZE} blocks per side. */
+        GREEDY
+    }
+
+    public static final Mode MODE = Mode.valueOf(System.getProperty("mineshit.meshMode", Mode.GREEDY.name()).toUpperCase());
+    public static final boolean AMBIENT_OCCLUSION = Boolean.parseBoolean(System.getProperty("mineshit.ambientOcclusion", "true"));
+    // Quad sizes are stored minus one on 3 bits each, in the free bits 26-31 of a face
+    public static final int MAX_QUAD_SIZE = 8;
+    // Faces of the chunks meshed with the default settings, see MeshCache
+    public static final MeshCache CACHE = new MeshCache(Long.getLong("mineshit.meshCacheBytes", 32L << 20));
+    // Occlusion of the four corners of a face, 2 bits each, stored in the high int of the face
+    private static final int OCCLUSION_SHIFT = 32;
+    // Empty slots kept after the faces of each direction so that block edits can be uploaded in place, at least this many
+    private static final int MIN_DIRECTION_SLACK = 4;
+
+    // The mesher works on a copy of the chunk surrounded by the border cells of its 26 neighbors
+    private static final int SIZE = Chunk.SIZE;
+    private static final int MESH_SIZE = SIZE + 2;
+    private static final int MESH_VOLUME = MESH_SIZE * MESH_SIZE * MESH_SIZE;
+
+    private static final FaceDirection[] FACE_DIRECTIONS = FaceDirection.values();
+
+    // Neighbors of a chunk: the six face neighbors in FaceDirection order, then the 12 edge and the 8 corner neighbors
+    public static final int NEIGHBOR_COUNT = 26;
+    private static final int EDGE_COUNT = 12;
+    private static final int[][] NEIGHBOR_DIRECTIONS = new int[NEIGHBOR_COUNT][];
+    private static final int[] NEIGHBOR_INDICES = new int[27]; // By (dx + 1) + (dy + 1) * 3 + (dz + 1) * 9, -1 for the chunk itself
+    // Border cells: the six boundary planes, then the 12 edge lines and the 8 corner cells, see getBorderIndex
+    private static final int EDGE_BASE = FACE_DIRECTIONS.length * SIZE * SIZE;
+    private static final int CORNER_BASE = EDGE_BASE + EDGE_COUNT * SIZE;
+    public static final int BORDER_LENGTH = CORNER_BASE + 8;
+
+    // Chunks meshed, and how many of them took each fast path, see getFastPathReport
+    private static final LongAdder meshedChunks = new LongAdder();
+    private static final LongAdder emptyChunks = new LongAdder();
+    private static final LongAdder enclosedChunks = new LongAdder();
+    private static final LongAdder uniformChunks = new LongAdder();
+    private static final int[] NEIGHBOR_OFFSETS = new int[FACE_DIRECTIONS.length];
+    // Corner occlusion indexed by the occupancy of the 3x3 cells in front of a face, bit u + 3 * v for the cell at (u - 1, v - 1)
+    private static final byte[] OCCLUSION_TABLE = new byte[1 << 9];
+    private static final ThreadLocal<short[]> BLOCK_BUFFER = ThreadLocal.withInitial(() -> new short[Chunk.TOTAL_BLOCKS]);
+    private static final ThreadLocal<short[]> MESH_BUFFER = ThreadLocal.withInitial(() -> new short[MESH_VOLUME]);
+    private static final ThreadLocal<short[]> PLANE_BUFFER = ThreadLocal.withInitial(() -> new short[BORDER_LENGTH]);
+    private static final ThreadLocal<int[]> MASK_BUFFER = ThreadLocal.withInitial(() -> new int[SIZE * SIZE]);
+    private static final ThreadLocal<long[]> OCCUPANCY_BUFFER = ThreadLocal.withInitial(() -> new long[MESH_SIZE * MESH_SIZE]);
+    private static final ThreadLocal<int[]> FACE_MASK_BUFFER = ThreadLocal.withInitial(() -> new int[FACE_DIRECTIONS.length * SIZE * SIZE]);
+
+    static {
+        for (FaceDirection face : FACE_DIRECTIONS) {
+            NEIGHBOR_OFFSETS[face.ordinal()] = face.getOffsetX()
+                    + face.getOffsetZ() * MESH_SIZE
+                    + face.getOffsetY() * MESH_SIZE * MESH_SIZE;
+            NEIGHBOR_DIRECTIONS[face.ordinal()] = new int[]{face.getOffsetX(), face.getOffsetY(), face.getOffsetZ()};
+        }
+        int neighbor = FACE_DIRECTIONS.length;
+        for (int axes = 2; axes <= 3; axes++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        if (Math.abs(dx) + Math.abs(dy) + Math.abs(dz) == axes) {
+                            NEIGHBOR_DIRECTIONS[neighbor++] = new int[]{dx, dy, dz};
+                        }
+                    }
+                }
+            }
+        }
+        Arrays.fill(NEIGHBOR_INDICES, -1);
+        for (int i = 0; i < NEIGHBOR_COUNT; i++) {
+            NEIGHBOR_INDICES[(NEIGHBOR_DIRECTIONS[i][0] + 1) + (NEIGHBOR_DIRECTIONS[i][1] + 1) * 3 + (NEIGHBOR_DIRECTIONS[i][2] + 1) * 9] = i;
+        }
+        for (int cells = 0; cells < OCCLUSION_TABLE.length; cells++) {
+            OCCLUSION_TABLE[cells] = (byte) (getCornerOcclusion(cells, 3, 1, 0)
+                    | getCornerOcclusion(cells, 5, 1, 2) << 2
+                    | getCornerOcclusion(cells, 3, 7, 6) << 4
+                    | getCornerOcclusion(cells, 5, 7, 8) << 6);
+        }
+    }
+
+    /**
+     * Builds the face list of a snapshot with the default settings. Only these go through the {@link #CACHE},
+     * the overloads taking explicit settings always mesh.
+     *
+     * @param faces     Destination list.
+     * @param snapshot  The chunk to mesh.
+     * @param neighbors Neighbor snapshots laid out as described in {@link #getNeighborOffset}. Missing and null entries are treated as air.
+     */
+    public static void mesh(NativeLongBuffer faces, ChunkSnapshot snapshot, ChunkSnapshot[] neighbors) {
+        mesh(faces, snapshot, neighbors, MODE, AMBIENT_OCCLUSION, CACHE.isEnabled() ? CACHE : null);
+    }
+
+    /**
+     * Builds the face list of a snapshot.
+     *
+     * @param faces     Destination list.
+     * @param snapshot  The chunk to mesh.
+     * @param neighbors Neighbor snapshots laid out as described in {@link #getNeighborOffset}. Missing and null entries are treated as air.
+     * @param mode      How faces are found and whether they are merged.
+     */
+    public static void mesh(NativeLongBuffer faces, ChunkSnapshot snapshot, ChunkSnapshot[] neighbors, Mode mode) {
+        mesh(faces, snapshot, neighbors, mode, AMBIENT_OCCLUSION);
+    }
+
+    /**
+     * Builds the face list of a snapshot.
+     *
+     * @param faces            Destination list.
+     * @param snapshot         The chunk to mesh.
+     * @param neighbors        Neighbor snapshots laid out as described in {@link #getNeighborOffset}. Missing and null entries are treated as air.
+     * @param mode             How faces are found and whether they are merged.
+     * @param ambientOcclusion Whether to compute the occlusion of the faces. Left to 0 (open) otherwise.
+     */
+    public static void mesh(NativeLongBuffer faces, ChunkSnapshot snapshot, ChunkSnapshot[] neighbors, Mode mode, boolean ambientOcclusion) {
+        mesh(faces, snapshot, neighbors, mode, ambientOcclusion, null);
+    }
+
+    private static void mesh(NativeLongBuffer faces, ChunkSnapshot snapshot, ChunkSnapshot[] neighbors, Mode mode, boolean ambientOcclusion,
+                             MeshCache cache) {
+        ChunkSummary[] neighborSummaries = new ChunkSummary[FACE_DIRECTIONS.length];
+        for (int i = 0; i < Math.min(neighbors.length, neighborSummaries.length); i++) {
+            neighborSummaries[i] = neighbors[i] != null ? neighbors[i].getSummary() : null;
+        }
+        meshedChunks.increment();
+        if (snapshot.getSummary().isEmpty()) {
+            emptyChunks.increment();
+            return;
+        }
+        if (canSkipMesh(snapshot.getSummary(), neighborSummaries)) {
+            enclosedChunks.increment();
+            return;
+        }
+
+        meshPlanes(faces, snapshot, neighborSummaries, buildBoundaryPlanes(neighbors), mode, ambientOcclusion, cache);
+    }
+
+    /**
+     * Gets the offset in chunks of a neighbor in the neighbor arrays given to the mesher. The six face neighbors
+     * come first, indexed by {@link FaceDirection#ordinal()}, followed by the 12 edge and the 8 corner neighbors,
+     * {@link #NEIGHBOR_COUNT} in all. Shorter arrays leave the missing neighbors to air.
+     */
+    public static Vector3i getNeighborOffset(int neighbor) {
+        int[] direction = NEIGHBOR_DIRECTIONS[neighbor];
+        return new Vector3i(direction[0], direction[1], direction[2]);
+    }
+
+    /**
+     * Builds the face list of a snapshot whose neighbor border cells are already known, such as
+     * the border of a level of detail region computed by the generator.
+     *
+     * @param faces    Destination list.
+     * @param snapshot The chunk to mesh.
+     * @param planes   Neighbor border cells, {@link #BORDER_LENGTH} of them laid out by {@link #getBorderIndex}.
+     */
+    public static void mesh(NativeLongBuffer faces, ChunkSnapshot snapshot, short[] planes) {
+        meshedChunks.increment();
+        if (snapshot.getSummary().isEmpty()) {
+            emptyChunks.increment();
+            return;
+        }
+        meshPlanes(faces, snapshot, new ChunkSummary[FACE_DIRECTIONS.length], planes, MODE, AMBIENT_OCCLUSION,
+                CACHE.isEnabled() ? CACHE : null);
+    }
+
+    /**
+     * Meshes a chunk from its neighbor border cells, looking the content up in the cache first if one is given.
+     * Uniform chunks are cheaper to mesh than to hash and never go through the cache.
+     */
+    private static void meshPlanes(NativeLongBuffer faces, ChunkSnapshot snapshot, ChunkSummary[] neighborSummaries,
+                                   short[] planes, Mode mode, boolean ambientOcclusion, MeshCache cache) {
+        if (snapshot.isUniform()) {
+            uniformChunks.increment();
+            meshUniform(faces, snapshot.getUniformBlockId(), planes, mode, ambientOcclusion);
+            return;
+        }
+
+        short[] blocks = snapshot.getBlocks(BLOCK_BUFFER.get());
+        if (cache == null) {
+            meshBlocks(faces, snapshot, neighborSummaries, blocks, planes, mode, ambientOcclusion);
+            return;
+        }
+
+        long key = cache.hash(blocks, planes, mode.ordinal() << 1 | (ambientOcclusion ? 1 : 0));
+        if (cache.fetch(key, faces)) return;
+
+        long startTime = System.nanoTime();
+        int start = faces.size();
+        meshBlocks(faces, snapshot, neighborSummaries, blocks, planes, mode, ambientOcclusion);
+        cache.put(key, faces, start, System.nanoTime() - startTime);
+    }
+
+    private static void meshBlocks(NativeLongBuffer faces, ChunkSnapshot snapshot, ChunkSummary[] neighborSummaries,
+                                   short[] blocks, short[] planes, Mode mode, boolean ambientOcclusion) {
+        int maxHeight = snapshot.getSummary().getMaxHeight();
+
+        if (mode != Mode.VOXEL) {
+            long[] occupancy = buildOccupancy(blocks, planes, maxHeight);
+            int[] faceMasks = buildFaceMasks(occupancy, maxHeight);
+            if (mode == Mode.GREEDY) {
+                meshGreedy(faces, blocks, faceMasks, occupancy, maxHeight, ambientOcclusion);
+            } else {
+                meshBinary(faces, blocks, faceMasks, occupancy, maxHeight, ambientOcclusion);
+            }
+            return;
+        }
+
+        int start = faces.size();
+        ColumnStorage columnStorage = snapshot.getColumns();
+        if (columnStorage != null) {
+            meshColumns(faces, columnStorage, planes);
+        } else {
+            meshSections(faces, snapshot, neighborSummaries, buildMeshView(blocks, planes));
+        }
+        if (ambientOcclusion) {
+            addOcclusion(faces, start, buildOccupancy(blocks, planes, maxHeight));
+        }
+    }
+
+    private static void meshSections(NativeLongBuffer faces, ChunkSnapshot snapshot, ChunkSummary[] neighborSummaries, short[] blocks) {
+        for (int sectionX = 0; sectionX < Chunk.SECTIONS_PER_AXIS; sectionX++) {
+            for (int sectionY = 0; sectionY < Chunk.SECTIONS_PER_AXIS; sectionY++) {
+                for (int sectionZ = 0; sectionZ < Chunk.SECTIONS_PER_AXIS; sectionZ++) {
+                    ChunkSection section = snapshot.getSection(Chunk.getSectionIndex(sectionX, sectionY, sectionZ));
+                    if (section.isUniform() && section.getUniformBlockId() == 0) continue;
+                    if (section.isUniform() && isSectionEnclosed(snapshot, neighborSummaries, sectionX, sectionY, sectionZ)) continue;
+
+                    meshSection(faces, blocks, snapshot.getSummary(), section.isUniform(),
+                            sectionX << ChunkSection.SHIFT, sectionY << ChunkSection.SHIFT, sectionZ << ChunkSection.SHIFT);
+                }
+            }
+        }
+    }
+
+    /**
+     * Meshes a chunk made of a single solid block type without decoding it: only its boundary blocks can show
+     * a face, where the neighbor plane in front of them is air. The 3x3 cells in front of such a face all lie in
+     * that plane, whose axes match the quad axes described in {@link #meshGreedy}, so faces come out the same
+     * as from the occupancy rows, and in the same order.
+     */
+    private static void meshUniform(NativeLongBuffer faces, short block, short[] planes, Mode mode, boolean ambientOcclusion) {
+        int[] mask = MASK_BUFFER.get();
+        Arrays.fill(mask, 0);
+        for (FaceDirection face : FACE_DIRECTIONS) {
+            int base = face.ordinal() * SIZE * SIZE;
+            int slice = face.getOffsetX() + face.getOffsetY() + face.getOffsetZ() > 0 ? SIZE - 1 : 0;
+            boolean hasFace = false;
+            for (int v = 0; v < SIZE; v++) {
+                for (int u = 0; u < SIZE; u++) {
+                    if (planes[base + u + v * SIZE] != 0) continue;
+
+                    int occlusion = ambientOcclusion ? getPlaneOcclusion(planes, face, u, v) : 0;
+                    if (mode == Mode.GREEDY) {
+                        mask[u + v * SIZE] = block | occlusion << 16;
+                        hasFace = true;
+                    } else if (face.getOffsetY() != 0) {
+                        faces.add(encodeFace(encodeFaceData(u, slice, v, (byte) block, face), occlusion));
+                    } else if (face.getOffsetX() != 0) {
+                        faces.add(encodeFace(encodeFaceData(slice, v, u, (byte) block, face), occlusion));
+                    } else {
+                        faces.add(encodeFace(encodeFaceData(u, v, slice, (byte) block, face), occlusion));
+                    }
+                }
+            }
+            if (hasFace) {
+                mergeSlice(faces, mask, face, slice, SIZE, SIZE);
+            }
+        }
+    }
+
+    /**
+     * Gets the occlusion of a face from the 3x3 border cells around (u, v) in the plane of the face.
+     * Cells past the plane edges come from the edge lines and corners of the border.
+     */
+    private static int getPlaneOcclusion(short[] planes, FaceDirection face, int u, int v) {
+        int slice = face.getOffsetX() + face.getOffsetY() + face.getOffsetZ() > 0 ? SIZE : -1;
+        int cells = 0;
+        for (int dv = -1; dv <= 1; dv++) {
+            for (int du = -1; du <= 1; du++) {
+                int cellU = u + du;
+                int cellV = v + dv;
+                int index = face.getOffsetY() != 0 ? getBorderIndex(cellU, slice, cellV)
+                        : face.getOffsetX() != 0 ? getBorderIndex(slice, cellV, cellU)
+                        : getBorderIndex(cellU, cellV, slice);
+                if (planes[index] != 0) {
+                    cells |= 1 << (du + 1 + (dv + 1) * 3);
+                }
+            }
+        }
+        return OCCLUSION_TABLE[cells] & 0xFF;
+    }
+
+    /**
+     * Formats how many chunks took each meshing fast path since the previous report, then resets the counters.
+     * Empty chunks and solid chunks buried in solid neighbors are skipped, uniform chunks only mesh their boundary.
+     */
+    public static String getFastPathReport() {
+        return String.format("fast paths: %d empty, %d enclosed, %d uniform of %d chunks",
+                emptyChunks.sumThenReset(), enclosedChunks.sumThenReset(), uniformChunks.sumThenReset(), meshedChunks.sumThenReset());
+    }
+
+    /**
+     * Checks from the summaries alone whether a chunk has no visible face: it is empty, or it is solid
+     * and every neighbor plane facing it is solid too.
+     *
+     * @param neighbors Neighbor summaries indexed by {@link FaceDirection#ordinal()}, null entries being air.
+     */
+    public static boolean canSkipMesh(ChunkSummary summary, ChunkSummary[] neighbors) {
+        if (summary.isEmpty()) return true;
+        if (!summary.isFullySolid()) return false;
+
+        for (FaceDirection face : FACE_DIRECTIONS) {
+            ChunkSummary neighbor = neighbors[face.ordinal()];
+            if (neighbor == null || !neighbor.isFaceSolid(face.getOpposite())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a uniform solid section is surrounded by solid blocks on all six sides: uniform solid
+     * sections inside the chunk, fully solid neighbor planes outside of it.
+     */
+    private static boolean isSectionEnclosed(ChunkSnapshot snapshot, ChunkSummary[] neighbors, int sectionX, int sectionY, int sectionZ) {
+        for (FaceDirection face : FACE_DIRECTIONS) {
+            int adjacentX = sectionX + face.getOffsetX();
+            int adjacentY = sectionY + face.getOffsetY();
+            int adjacentZ = sectionZ + face.getOffsetZ();
+
+            if (adjacentX < 0 || adjacentX >= Chunk.SECTIONS_PER_AXIS
+                    || adjacentY < 0 || adjacentY >= Chunk.SECTIONS_PER_AXIS
+                    || adjacentZ < 0 || adjacentZ >= Chunk.SECTIONS_PER_AXIS) {
+                ChunkSummary neighbor = neighbors[face.ordinal()];
+                if (neighbor == null || !neighbor.isFaceSolid(face.getOpposite())) {
+                    return false;
+                }
+            } else {
+                ChunkSection adjacent = snapshot.getSection(Chunk.getSectionIndex(adjacentX, adjacentY, adjacentZ));
+                if (!adjacent.isUniform() || adjacent.getUniformBlockId() == 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the cells of each neighbor touching the chunk into the border buffer, laid out by {@link #getBorderIndex}:
+     * the facing boundary plane of the face neighbors, the facing edge line of the edge neighbors and the facing
+     * corner of the corner neighbors.
+     */
+    private static short[] buildBoundaryPlanes(ChunkSnapshot[] neighbors) {
+        short[] planes = PLANE_BUFFER.get();
+        for (FaceDirection face : FACE_DIRECTIONS) {
+            ChunkSnapshot neighbor = face.ordinal() < neighbors.length ? neighbors[face.ordinal()] : null;
+            int base = face.ordinal() * SIZE * SIZE;
+            if (neighbor == null) {
+                Arrays.fill(planes, base, base + SIZE * SIZE, (short) 0);
+                continue;
+            }
+
+            for (int v = 0; v < SIZE; v++) {
+                for (int u = 0; u < SIZE; u++) {
+                    planes[base + u + v * SIZE] = switch (face) {
+                        case BACK -> neighbor.getBlock(u, v, SIZE - 1);
+                        case FRONT -> neighbor.getBlock(u, v, 0);
+                        case LEFT -> neighbor.getBlock(SIZE - 1, v, u);
+                        case RIGHT -> neighbor.getBlock(0, v, u);
+                        case BOTTOM -> neighbor.getBlock(u, SIZE - 1, v);
+                        case TOP -> neighbor.getBlock(u, 0, v);
+                    };
+                }
+            }
+        }
+        for (int i = FACE_DIRECTIONS.length; i < NEIGHBOR_COUNT; i++) {
+            ChunkSnapshot neighbor = i < neighbors.length ? neighbors[i] : null;
+            int[] direction = NEIGHBOR_DIRECTIONS[i];
+            // An edge neighbor touches the chunk along the axis it shares with it, a corner neighbor at a single cell
+            int length = i < FACE_DIRECTIONS.length + EDGE_COUNT ? SIZE : 1;
+            for (int t = 0; t < length; t++) {
+                int x = direction[0] == 0 ? t : direction[0] < 0 ? -1 : SIZE;
+                int y = direction[1] == 0 ? t : direction[1] < 0 ? -1 : SIZE;
+                int z = direction[2] == 0 ? t : direction[2] < 0 ? -1 : SIZE;
+                planes[getBorderIndex(x, y, z)] = neighbor == null ? 0
+                        : neighbor.getBlock(x - direction[0] * SIZE, y - direction[1] * SIZE, z - direction[2] * SIZE);
+            }
+        }
+        return planes;
+    }
+
+    /**
+     * Gets the index of a cell around the chunk in the border buffer. Local coordinates range from -1 to
+     * {@link Chunk#SIZE}, one of them at least outside of the chunk.
+     * <p>
+     * The {@code SIZE * SIZE} cells beside each face come first, indexed by (x, z) for the bottom and top faces,
+     * (z, y) for the left and right faces and (x, y) for the back and front faces, first coordinate varying fastest.
+     * The 12 edge lines follow, {@code SIZE} cells each indexed by the coordinate along the edge: the 4 lines
+     * along X, then along Y, then along Z. The 8 corner cells come last.
+     */
+    public static int getBorderIndex(int x, int y, int z) {
+        boolean outsideX = x < 0 || x >= SIZE;
+        boolean outsideY = y < 0 || y >= SIZE;
+        boolean outsideZ = z < 0 || z >= SIZE;
+        int sideX = x < 0 ? 0 : 1;
+        int sideY = y < 0 ? 0 : 1;
+        int sideZ = z < 0 ? 0 : 1;
+
+        if (outsideX && outsideY && outsideZ) {
+            return CORNER_BASE + sideX + sideY * 2 + sideZ * 4;
+        }
+        if (!outsideX && outsideY && outsideZ) {
+            return EDGE_BASE + (sideY + sideZ * 2) * SIZE + x;
+        }
+        if (outsideX && !outsideY && outsideZ) {
+            return EDGE_BASE + (4 + sideX + sideZ * 2) * SIZE + y;
+        }
+        if (outsideX && outsideY) {
+            return EDGE_BASE + (8 + sideX + sideY * 2) * SIZE + z;
+        }
+        if (outsideX) {
+            return (x < 0 ? FaceDirection.LEFT : FaceDirection.RIGHT).ordinal() * SIZE * SIZE + z + y * SIZE;
+        }
+        if (outsideY) {
+            return (y < 0 ? FaceDirection.BOTTOM : FaceDirection.TOP).ordinal() * SIZE * SIZE + x + z * SIZE;
+        }
+        return (z < 0 ? FaceDirection.BACK : FaceDirection.FRONT).ordinal() * SIZE * SIZE + x + y * SIZE;
+    }
+
+    /**
+     * Meshes column runs directly. Top and bottom faces only exist at run ends, and side faces are found
+     * by walking the runs of the neighbor column alongside, so solid stretches are never visited block by block.
+     */
+    private static void meshColumns(NativeLongBuffer faces, ColumnStorage columnStorage, short[] planes) {
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                int column = ColumnStorage.getColumnIndex(x, z);
+                int start = columnStorage.getRunStart(column);
+                int end = columnStorage.getRunEnd(column);
+
+                for (int run = start; run < end; run++) {
+                    short block = columnStorage.getRunBlock(run);
+                    if (block == 0) continue;
+                    int bottom = run == start ? 0 : columnStorage.getRunTop(run - 1);
+                    int top = columnStorage.getRunTop(run);
+
+                    short below = run == start
+                            ? planes[FaceDirection.BOTTOM.ordinal() * SIZE * SIZE + x + z * SIZE]
+                            : columnStorage.getRunBlock(run - 1);
+                    if (below == 0) {
+                        faces.add(encodeFaceData(x, bottom, z, (byte) block, FaceDirection.BOTTOM));
+                    }
+                    short above = run == end - 1
+                            ? planes[FaceDirection.TOP.ordinal() * SIZE * SIZE + x + z * SIZE]
+                            : columnStorage.getRunBlock(run + 1);
+                    if (above == 0) {
+                        faces.add(encodeFaceData(x, top - 1, z, (byte) block, FaceDirection.TOP));
+                    }
+
+                    for (FaceDirection face : FACE_DIRECTIONS) {
+                        if (face.getOffsetY() != 0) continue;
+                        meshRunSide(faces, columnStorage, planes, face, x, z, bottom, top, block);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void meshRunSide(NativeLongBuffer faces, ColumnStorage columnStorage, short[] planes, FaceDirection face,
+                                    int x, int z, int bottom, int top, short block) {
+        int neighborX = x + face.getOffsetX();
+        int neighborZ = z + face.getOffsetZ();
+
+        if (neighborX < 0 || neighborX >= SIZE || neighborZ < 0 || neighborZ >= SIZE) {
+            int base = face.ordinal() * SIZE * SIZE + (face.getOffsetX() != 0 ? z : x);
+            for (int y = bottom; y < top; y++) {
+                if (planes[base + y * SIZE] == 0) {
+                    faces.add(encodeFaceData(x, y, z, (byte) block, face));
+                }
+            }
+            return;
+        }
+
+        int neighborColumn = ColumnStorage.getColumnIndex(neighborX, neighborZ);
+        int neighborBottom = 0;
+        for (int run = columnStorage.getRunStart(neighborColumn), end = columnStorage.getRunEnd(neighborColumn);
+             run < end && neighborBottom < top; run++) {
+            int neighborTop = columnStorage.getRunTop(run);
+            if (neighborTop > bottom && columnStorage.getRunBlock(run) == 0) {
+                for (int y = Math.max(bottom, neighborBottom), maxY = Math.min(top, neighborTop); y < maxY; y++) {
+                    faces.add(encodeFaceData(x, y, z, (byte) block, face));
+                }
+            }
+            neighborBottom = neighborTop;
+        }
+    }
+
+    /**
+     * Copies the chunk blocks and the neighbor boundary planes into the mesh buffer.
+     * Edges and corners of the buffer are never read since faces only look at the six direct neighbors.
+     */
+    private static short[] buildMeshView(short[] chunkBlocks, short[] planes) {
+        short[] view = MESH_BUFFER.get();
+
+        for (int y = 0; y < SIZE; y++) {
+            for (int z = 0; z < SIZE; z++) {
+                System.arraycopy(chunkBlocks, Chunk.getBlockIndex(0, y, z), view, getMeshIndex(0, y, z), SIZE);
+            }
+        }
+
+        for (FaceDirection face : FACE_DIRECTIONS) {
+            int base = face.ordinal() * SIZE * SIZE;
+            int minX = face.getOffsetX() < 0 ? -1 : face.getOffsetX() > 0 ? SIZE : 0;
+            int minY = face.getOffsetY() < 0 ? -1 : face.getOffsetY() > 0 ? SIZE : 0;
+            int minZ = face.getOffsetZ() < 0 ? -1 : face.getOffsetZ() > 0 ? SIZE : 0;
+            int maxX = face.getOffsetX() == 0 ? SIZE : minX + 1;
+            int maxY = face.getOffsetY() == 0 ? SIZE : minY + 1;
+            int maxZ = face.getOffsetZ() == 0 ? SIZE : minZ + 1;
+
+            for (int y = minY; y < maxY; y++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    for (int x = minX; x < maxX; x++) {
+                        view[getMeshIndex(x, y, z)] = face.getOffsetY() != 0 ? planes[base + x + z * SIZE]
+                                : face.getOffsetX() != 0 ? planes[base + z + y * SIZE]
+                                : planes[base + x + y * SIZE];
+                    }
+                }
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Meshes one section from the mesh buffer. In a uniform solid section only the blocks on the
+     * section boundary can have an exposed face. Other sections stop at the highest column of the heightmap.
+     */
+    private static void meshSection(NativeLongBuffer faces, short[] blocks, ChunkSummary summary, boolean isUniformSolid,
+                                    int originX, int originY, int originZ) {
+        int maxX = originX + ChunkSection.SIZE;
+        int maxY = isUniformSolid ? originY + ChunkSection.SIZE
+                : Math.min(originY + ChunkSection.SIZE, summary.getMaxHeight(originX, originZ, ChunkSection.SIZE));
+        int maxZ = originZ + ChunkSection.SIZE;
+
+        for (int x = originX; x < maxX; x++) {
+            for (int y = originY; y < maxY; y++) {
+                boolean isInner = isUniformSolid && x > originX && x < maxX - 1 && y > originY && y < maxY - 1;
+                int zStep = isInner ? ChunkSection.SIZE - 1 : 1;
+
+                for (int z = originZ; z < maxZ; z += zStep) {
+                    int blockIndex = getMeshIndex(x, y, z);
+                    short block = blocks[blockIndex];
+                    if (block == 0) continue;
+
+                    for (FaceDirection face : FACE_DIRECTIONS) {
+                        if (blocks[blockIndex + NEIGHBOR_OFFSETS[face.ordinal()]] == 0) {
+                            faces.add(encodeFaceData(x, y, z, (byte) block, face));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the occupancy of the mesh view, one long per (y, z) row from -1 to {@link Chunk#SIZE} indexed by
+     * {@link #getOccupancyIndex}, bit x + 1 set for a solid block at x. Cells outside of the chunk come from
+     * the neighbor border cells, edges and corners of the view included.
+     *
+     * @param planes    Neighbor border cells laid out by {@link #getBorderIndex}.
+     * @param maxHeight Y above the highest solid block of the chunk. Chunk rows from there are left empty.
+     */
+    private static long[] buildOccupancy(short[] blocks, short[] planes, int maxHeight) {
+        long[] occupancy = OCCUPANCY_BUFFER.get();
+        Arrays.fill(occupancy, 0L);
+        int left = FaceDirection.LEFT.ordinal() * SIZE * SIZE;
+        int right = FaceDirection.RIGHT.ordinal() * SIZE * SIZE;
+        int back = FaceDirection.BACK.ordinal() * SIZE * SIZE;
+        int front = FaceDirection.FRONT.ordinal() * SIZE * SIZE;
+        int bottom = FaceDirection.BOTTOM.ordinal() * SIZE * SIZE;
+        int top = FaceDirection.TOP.ordinal() * SIZE * SIZE;
+
+        for (int y = 0; y < SIZE; y++) {
+            for (int z = 0; z < SIZE; z++) {
+                long cells = 0;
+                if (y < maxHeight) {
+                    for (int x = 0, index = Chunk.getBlockIndex(0, y, z); x < SIZE; x++, index++) {
+                        if (blocks[index] != 0) cells |= 1L << x;
+                    }
+                }
+                cells <<= 1;
+                if (planes[left + z + y * SIZE] != 0) cells |= 1;
+                if (planes[right + z + y * SIZE] != 0) cells |= 1L << (SIZE + 1);
+                occupancy[getOccupancyIndex(y, z)] = cells;
+            }
+            occupancy[getOccupancyIndex(y, -1)] = Integer.toUnsignedLong(planeRow(planes, back + y * SIZE)) << 1;
+            occupancy[getOccupancyIndex(y, SIZE)] = Integer.toUnsignedLong(planeRow(planes, front + y * SIZE)) << 1;
+        }
+        for (int z = 0; z < SIZE; z++) {
+            occupancy[getOccupancyIndex(-1, z)] = Integer.toUnsignedLong(planeRow(planes, bottom + z * SIZE)) << 1;
+            occupancy[getOccupancyIndex(SIZE, z)] = Integer.toUnsignedLong(planeRow(planes, top + z * SIZE)) << 1;
+        }
+        for (int i = -1; i <= SIZE; i++) {
+            addEdgeCells(occupancy, planes, i, -1);
+            addEdgeCells(occupancy, planes, i, SIZE);
+            if (i >= 0 && i < SIZE) {
+                addEdgeCells(occupancy, planes, -1, i);
+                addEdgeCells(occupancy, planes, SIZE, i);
+            }
+        }
+        return occupancy;
+    }
+
+    /**
+     * Adds the edge and corner cells of an occupancy row outside of the chunk: both ends of a row beside
+     * a boundary plane, the whole row when it runs along an edge of the view.
+     */
+    private static void addEdgeCells(long[] occupancy, short[] planes, int y, int z) {
+        boolean alongEdge = (y < 0 || y >= SIZE) && (z < 0 || z >= SIZE);
+        long cells = occupancy[getOccupancyIndex(y, z)];
+        for (int x = -1; x <= SIZE; x += alongEdge ? 1 : SIZE + 1) {
+            if (planes[getBorderIndex(x, y, z)] != 0) cells |= 1L << (x + 1);
+        }
+        occupancy[getOccupancyIndex(y, z)] = cells;
+    }
+
+    /**
+     * Builds the exposed face bitmasks of every (y, z) row for each face direction, {@code SIZE * SIZE} ints
+     * per face indexed by {@code y * SIZE + z}, bit x set when the block at (x, y, z) shows that face.
+     * Side faces along X shift the occupancy row itself, the other faces compare it with the adjacent row.
+     *
+     * @param occupancy Occupancy rows from {@link #buildOccupancy}.
+     * @param maxHeight Y above the highest solid block of the chunk. Rows from there are left unset.
+     */
+    private static int[] buildFaceMasks(long[] occupancy, int maxHeight) {
+        int[] faceMasks = FACE_MASK_BUFFER.get();
+        int left = FaceDirection.LEFT.ordinal() * SIZE * SIZE;
+        int right = FaceDirection.RIGHT.ordinal() * SIZE * SIZE;
+        int back = FaceDirection.BACK.ordinal() * SIZE * SIZE;
+        int front = FaceDirection.FRONT.ordinal() * SIZE * SIZE;
+        int bottom = FaceDirection.BOTTOM.ordinal() * SIZE * SIZE;
+        int top = FaceDirection.TOP.ordinal() * SIZE * SIZE;
+
+        for (int y = 0; y < maxHeight; y++) {
+            for (int z = 0; z < SIZE; z++) {
+                int row = y * SIZE + z;
+                long cells = occupancy[getOccupancyIndex(y, z)];
+                int bits = (int) (cells >>> 1);
+
+                faceMasks[left + row] = bits & ~(int) cells;
+                faceMasks[right + row] = bits & ~(int) (cells >>> 2);
+                faceMasks[bottom + row] = bits & ~(int) (occupancy[getOccupancyIndex(y - 1, z)] >>> 1);
+                faceMasks[top + row] = bits & ~(int) (occupancy[getOccupancyIndex(y + 1, z)] >>> 1);
+                faceMasks[back + row] = bits & ~(int) (occupancy[getOccupancyIndex(y, z - 1)] >>> 1);
+                faceMasks[front + row] = bits & ~(int) (occupancy[getOccupancyIndex(y, z + 1)] >>> 1);
+            }
+        }
+        return faceMasks;
+    }
+
+    /**
+     * Gets the occupancy of {@code SIZE} consecutive entries of a boundary plane, bit i set for a solid entry.
+     */
+    private static int planeRow(short[] planes, int start) {
+        int bits = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if (planes[start + i] != 0) bits |= 1 << i;
+        }
+        return bits;
+    }
+
+    /**
+     * Emits one face per set bit of the face masks.
+     */
+    private static void meshBinary(NativeLongBuffer faces, short[] blocks, int[] faceMasks, long[] occupancy, int maxHeight,
+                                   boolean ambientOcclusion) {
+        for (FaceDirection face : FACE_DIRECTIONS) {
+            int base = face.ordinal() * SIZE * SIZE;
+            for (int y = 0; y < maxHeight; y++) {
+                for (int z = 0; z < SIZE; z++) {
+                    int bits = faceMasks[base + y * SIZE + z];
+                    while (bits != 0) {
+                        int x = Integer.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        faces.add(encodeFace(encodeFaceData(x, y, z, (byte) blocks[Chunk.getBlockIndex(x, y, z)], face),
+                                ambientOcclusion ? getOcclusion(occupancy, x, y, z, face) : 0));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the faces of each face direction one slice at a time. The set bits of a slice are expanded
+     * into a mask of block types and occlusions, which is then grown into rectangles: first along the u axis,
+     * then row by row along the v axis while the whole row matches. Only faces with the same occlusion merge.
+     * <p>
+     * Quads span (x, z) for the bottom and top faces, (z, y) for the left and right faces and (x, y)
+     * for the back and front faces, width along the first axis. Face masks along X are transposed
+     * in place so that every slice is read as rows of u bits.
+     *
+     * @param maxHeight Y above the highest solid block of the chunk, nothing is meshed above it.
+     */
+    private static void meshGreedy(NativeLongBuffer faces, short[] blocks, int[] faceMasks, long[] occupancy, int maxHeight,
+                                   boolean ambientOcclusion) {
+        int[] mask = MASK_BUFFER.get();
+        Arrays.fill(mask, 0);
+
+        for (FaceDirection face : FACE_DIRECTIONS) {
+            int base = face.ordinal() * SIZE * SIZE;
+            boolean alongX = face.getOffsetX() != 0;
+            boolean alongY = face.getOffsetY() != 0;
+            if (alongX) {
+                for (int y = 0; y < maxHeight; y++) {
+                    transpose(faceMasks, base + y * SIZE);
+                }
+            }
+
+            int sliceCount = alongY ? maxHeight : SIZE;
+            int height = alongY ? SIZE : maxHeight;
+            for (int slice = 0; slice < sliceCount; slice++) {
+                boolean hasFace = false;
+                for (int v = 0; v < height; v++) {
+                    // Y faces: slice y, rows z. X faces (transposed): slice x, rows y. Z faces: slice z, rows y
+                    int bits = faceMasks[base + (alongY ? slice * SIZE + v : v * SIZE + slice)];
+                    while (bits != 0) {
+                        int u = Integer.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        int x = alongY ? u : alongX ? slice : u;
+                        int y = alongY ? slice : v;
+                        int z = alongY ? v : alongX ? u : slice;
+                        int occlusion = ambientOcclusion ? getOcclusion(occupancy, x, y, z, face) : 0;
+                        mask[u + v * SIZE] = blocks[Chunk.getBlockIndex(x, y, z)] | occlusion << 16;
+                        hasFace = true;
+                    }
+                }
+                if (hasFace) {
+                    mergeSlice(faces, mask, face, slice, SIZE, height);
+                }
+            }
+        }
+    }
+
+    /**
+     * Transposes a 32x32 bit matrix in place: bit j of row i becomes bit i of row j.
+     */
+    private static void transpose(int[] matrix, int offset) {
+        int mask = 0x0000FFFF;
+        for (int shift = 16; shift != 0; shift >>>= 1, mask ^= mask << shift) {
+            for (int k = 0; k < SIZE; k = ((k | shift) + 1) & ~shift) {
+                int swap = ((matrix[offset + k] >>> shift) ^ matrix[offset + (k | shift)]) & mask;
+                matrix[offset + (k | shift)] ^= swap;
+                matrix[offset + k] ^= swap << shift;
+            }
+        }
+    }
+
+    /**
+     * Grows the entries of a slice mask, block type on the low 16 bits and occlusion above, into quads and emits them.
+     * The mask is left cleared.
+     */
+    private static void mergeSlice(NativeLongBuffer faces, int[] mask, FaceDirection face, int slice, int width, int height) {
+        for (int v = 0; v < height; v++) {
+            for (int u = 0; u < width; ) {
+                int block = mask[u + v * SIZE];
+                if (block == 0) {
+                    u++;
+                    continue;
+                }
+
+                int quadWidth = 1;
+                while (quadWidth < MAX_QUAD_SIZE && u + quadWidth < width && mask[u + quadWidth + v * SIZE] == block) {
+                    quadWidth++;
+                }
+                int quadHeight = 1;
+                growHeight:
+                while (quadHeight < MAX_QUAD_SIZE && v + quadHeight < height) {
+                    int rowStart = u + (v + quadHeight) * SIZE;
+                    for (int i = rowStart; i < rowStart + quadWidth; i++) {
+                        if (mask[i] != block) break growHeight;
+                    }
+                    quadHeight++;
+                }
+
+                for (int row = v; row < v + quadHeight; row++) {
+                    Arrays.fill(mask, u + row * SIZE, u + quadWidth + row * SIZE, 0);
+                }
+
+                int quad;
+                if (face.getOffsetY() != 0) {
+                    quad = encodeFaceData(u, slice, v, (byte) block, face, quadWidth, quadHeight);
+                } else if (face.getOffsetX() != 0) {
+                    quad = encodeFaceData(slice, v, u, (byte) block, face, quadWidth, quadHeight);
+                } else {
+                    quad = encodeFaceData(u, v, slice, (byte) block, face, quadWidth, quadHeight);
+                }
+                faces.add(encodeFace(quad, block >>> 16));
+                u += quadWidth;
+            }
+        }
+    }
+
+    /**
+     * Lays out a face buffer as one contiguous range per direction, in {@link FaceDirection} order, so that
+     * directions can be drawn separately. Each range ends with empty slots (0 entries) for later patches.
+     * Empty slots already in the buffer are dropped. An empty buffer stays empty.
+     *
+     * @param faces           Face buffer to rearrange.
+     * @param directionStarts Receives the first slot of each direction range, followed by the buffer size.
+     */
+    public static void partition(NativeLongBuffer faces, int[] directionStarts) {
+        long[] values = faces.toArray();
+        int[] counts = new int[FACE_DIRECTIONS.length];
+        int total = 0;
+        for (long face : values) {
+            if (face != 0) {
+                counts[getDirection(face)]++;
+                total++;
+            }
+        }
+
+        faces.clear();
+        for (FaceDirection faceDir : FACE_DIRECTIONS) {
+            int direction = faceDir.ordinal();
+            directionStarts[direction] = faces.size();
+            if (total == 0) continue;
+
+            for (long face : values) {
+                if (face != 0 && getDirection(face) == direction) {
+                    faces.add(face);
+                }
+            }
+            for (int i = 0, slack = Math.max(MIN_DIRECTION_SLACK, counts[direction] / 16); i < slack; i++) {
+                faces.add(0);
+            }
+        }
+        directionStarts[FACE_DIRECTIONS.length] = faces.size();
+    }
+
+    /**
+     * Patches a face buffer after a single block edit instead of remeshing the chunk. Only the faces of the
+     * edited block and of the blocks around it can change, the latter through their occlusion: quads covering
+     * one of them are removed, the rest of those quads is put back as single faces, and the faces of these
+     * blocks are recomputed. Faces go to empty slots (0 entries) of their direction range, the ones just freed
+     * included, and are appended past the ranges once their range is full.
+     *
+     * @param faces      Face buffer of the chunk, laid out by {@link #partition}.
+     * @param chunk      The chunk, already holding the new block.
+     * @param neighbors  Neighbor chunks laid out as described in {@link #getNeighborOffset}. Missing and null entries are treated as air.
+     * @param x          Local X of the edited block, -1 or {@link Chunk#SIZE} for an edit in a neighbor.
+     * @param y          Local Y of the edited block, same range.
+     * @param z          Local Z of the edited block, same range.
+     * @param directionStarts Direction ranges of the buffer, from {@link #partition}.
+     * @param dirtySlots First and last + 1 slot written, widened by the patch.
+     * @return False if a range overflowed and faces were appended, in which case the buffer must be partitioned again.
+     */
+    public static boolean patch(NativeLongBuffer faces, Chunk chunk, Chunk[] neighbors, int x, int y, int z,
+                                int[] directionStarts, int[] dirtySlots) {
+        // Box of the blocks whose faces may have changed, min X, Y, Z then max X, Y, Z
+        int[] affected = {
+                Math.max(x - 1, 0), Math.max(y - 1, 0), Math.max(z - 1, 0),
+                Math.min(x + 1, SIZE - 1), Math.min(y + 1, SIZE - 1), Math.min(z + 1, SIZE - 1)
+        };
+        if (affected[0] > affected[3] || affected[1] > affected[4] || affected[2] > affected[5]) return true;
+
+        long[] pending = new long[64];
+        int pendingCount = 0;
+        int[] freed = new int[16];
+        int freedCount = 0;
+
+        for (int slot = 0; slot < faces.size(); slot++) {
+            long entry = faces.get(slot);
+            int face = (int) entry;
+            if (entry == 0 || !quadIntersects(face, affected)) continue;
+
+            faces.set(slot, 0);
+            if (freedCount == freed.length) freed = Arrays.copyOf(freed, freedCount * 2);
+            freed[freedCount++] = slot;
+
+            // Put back the blocks of the quad that are not affected as single faces, with the occlusion of the quad
+            FaceDirection faceDir = FACE_DIRECTIONS[getDirection(entry)];
+            int width = ((face >>> 26) & 0x7) + 1;
+            int height = ((face >>> 29) & 0x7) + 1;
+            for (int v = 0; v < height; v++) {
+                for (int u = 0; u < width; u++) {
+                    int blockX = quadX(face, faceDir, u);
+                    int blockY = quadY(face, faceDir, v);
+                    int blockZ = quadZ(face, faceDir, u, v);
+                    if (isInBox(affected, blockX, blockY, blockZ)) continue;
+                    if (pendingCount == pending.length) pending = Arrays.copyOf(pending, pendingCount * 2);
+                    pending[pendingCount++] = (entry & ~(0x7FFFL | 0x3FL << 26)) | packPosition(blockX, blockY, blockZ);
+                }
+            }
+        }
+
+        for (int blockY = affected[1]; blockY <= affected[4]; blockY++) {
+            for (int blockZ = affected[2]; blockZ <= affected[5]; blockZ++) {
+                for (int blockX = affected[0]; blockX <= affected[3]; blockX++) {
+                    short block = chunk.getBlock(blockX, blockY, blockZ);
+                    if (block == 0) continue;
+
+                    for (FaceDirection face : FACE_DIRECTIONS) {
+                        if (getBlock(chunk, neighbors, blockX + face.getOffsetX(), blockY + face.getOffsetY(), blockZ + face.getOffsetZ()) == 0) {
+                            if (pendingCount == pending.length) pending = Arrays.copyOf(pending, pendingCount * 2);
+                            pending[pendingCount++] = encodeFace(encodeFaceData(blockX, blockY, blockZ, (byte) block, face),
+                                    AMBIENT_OCCLUSION ? getOcclusion(chunk, neighbors, blockX, blockY, blockZ, face) : 0);
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < freedCount; i++) {
+            markDirty(dirtySlots, freed[i]);
+        }
+
+        boolean fits = true;
+        int[] cursors = Arrays.copyOf(directionStarts, FACE_DIRECTIONS.length);
+        for (int i = 0; i < pendingCount; i++) {
+            int direction = getDirection(pending[i]);
+            int end = directionStarts[direction + 1];
+            int slot = cursors[direction];
+            while (slot < end && faces.get(slot) != 0) {
+                slot++;
+            }
+            if (slot < end) {
+                faces.set(slot, pending[i]);
+                markDirty(dirtySlots, slot);
+                cursors[direction] = slot + 1;
+            } else {
+                cursors[direction] = end;
+                faces.add(pending[i]);
+                fits = false;
+            }
+        }
+        return fits;
+    }
+
+    /**
+     * Checks whether a quad covers a block of a box given as min X, Y, Z then max X, Y, Z, inclusive.
+     */
+    private static boolean quadIntersects(int face, int[] box) {
+        FaceDirection faceDir = FACE_DIRECTIONS[(face >>> 15) & 0x7];
+        int minX = face & 0x1F;
+        int minY = (face >>> 5) & 0x1F;
+        int minZ = (face >>> 10) & 0x1F;
+        int maxX = quadX(face, faceDir, ((face >>> 26) & 0x7));
+        int maxY = quadY(face, faceDir, ((face >>> 29) & 0x7));
+        int maxZ = quadZ(face, faceDir, ((face >>> 26) & 0x7), ((face >>> 29) & 0x7));
+        return minX <= box[3] && maxX >= box[0] && minY <= box[4] && maxY >= box[1] && minZ <= box[5] && maxZ >= box[2];
+    }
+
+    private static boolean isInBox(int[] box, int x, int y, int z) {
+        return x >= box[0] && x <= box[3] && y >= box[1] && y <= box[4] && z >= box[2] && z <= box[5];
+    }
+
+    // Block of a quad at (u, v), following the quad axes described in meshGreedy
+
+    private static int quadX(int face, FaceDirection faceDir, int u) {
+        return (face & 0x1F) + (faceDir.getOffsetX() != 0 ? 0 : u);
+    }
+
+    private static int quadY(int face, FaceDirection faceDir, int v) {
+        return ((face >>> 5) & 0x1F) + (faceDir.getOffsetY() != 0 ? 0 : v);
+    }
+
+    private static int quadZ(int face, FaceDirection faceDir, int u, int v) {
+        int z = (face >>> 10) & 0x1F;
+        if (faceDir.getOffsetY() != 0) return z + v;
+        if (faceDir.getOffsetX() != 0) return z + u;
+        return z;
+    }
+
+    /**
+     * Adds the occlusion to the single faces emitted from {@code start}.
+     */
+    private static void addOcclusion(NativeLongBuffer faces, int start, long[] occupancy) {
+        for (int slot = start; slot < faces.size(); slot++) {
+            int face = (int) faces.get(slot);
+            faces.set(slot, encodeFace(face, getOcclusion(occupancy, face & 0x1F, (face >>> 5) & 0x1F, (face >>> 10) & 0x1F,
+                    FACE_DIRECTIONS[(face >>> 15) & 0x7])));
+        }
+    }
+
+    /**
+     * Gets the occlusion of a face from the occupancy rows. The 3x3 cells in front of the face are gathered
+     * along the quad axes described in {@link #meshGreedy}: three bits of a row at once for the faces along
+     * Y and Z, one bit per cell for the faces along X whose u axis crosses the rows.
+     *
+     * @return Occlusion of the (u0, v0), (u1, v0), (u0, v1) and (u1, v1) corners, 2 bits each from 0 (open) to 3.
+     */
+    private static int getOcclusion(long[] occupancy, int x, int y, int z, FaceDirection face) {
+        int frontX = x + face.getOffsetX();
+        int frontY = y + face.getOffsetY();
+        int frontZ = z + face.getOffsetZ();
+        int cells;
+        if (face.getOffsetY() != 0) {
+            cells = (int) (occupancy[getOccupancyIndex(frontY, z - 1)] >>> x) & 0x7
+                    | ((int) (occupancy[getOccupancyIndex(frontY, z)] >>> x) & 0x7) << 3
+                    | ((int) (occupancy[getOccupancyIndex(frontY, z + 1)] >>> x) & 0x7) << 6;
+        } else if (face.getOffsetZ() != 0) {
+            cells = (int) (occupancy[getOccupancyIndex(y - 1, frontZ)] >>> x) & 0x7
+                    | ((int) (occupancy[getOccupancyIndex(y, frontZ)] >>> x) & 0x7) << 3
+                    | ((int) (occupancy[getOccupancyIndex(y + 1, frontZ)] >>> x) & 0x7) << 6;
+        } else {
+            cells = 0;
+            for (int v = 0; v < 3; v++) {
+                for (int u = 0; u < 3; u++) {
+                    cells |= ((int) (occupancy[getOccupancyIndex(y + v - 1, z + u - 1)] >>> (frontX + 1)) & 1) << (u + v * 3);
+                }
+            }
+        }
+        return OCCLUSION_TABLE[cells] & 0xFF;
+    }
+
+    /**
+     * Gets the occlusion of a face from the blocks of a chunk and its neighbors, same layout
+     * as {@link #getOcclusion(long[], int, int, int, FaceDirection)}.
+     */
+    private static int getOcclusion(Chunk chunk, Chunk[] neighbors, int x, int y, int z, FaceDirection face) {
+        boolean alongX = face.getOffsetX() != 0;
+        boolean alongY = face.getOffsetY() != 0;
+        int cells = 0;
+        for (int v = -1; v <= 1; v++) {
+            for (int u = -1; u <= 1; u++) {
+                int cellX = x + face.getOffsetX() + (alongX ? 0 : u);
+                int cellY = y + face.getOffsetY() + (alongY ? 0 : v);
+                int cellZ = z + face.getOffsetZ() + (alongY ? v : alongX ? u : 0);
+                if (getBlock(chunk, neighbors, cellX, cellY, cellZ) != 0) {
+                    cells |= 1 << (u + 1 + (v + 1) * 3);
+                }
+            }
+        }
+        return OCCLUSION_TABLE[cells] & 0xFF;
+    }
+
+    /**
+     * Gets the occlusion of one corner: the number of solid cells around it, or 3 when both sides are solid.
+     */
+    private static int getCornerOcclusion(int cells, int side, int otherSide, int corner) {
+        int sides = (cells >>> side & 1) + (cells >>> otherSide & 1);
+        return sides == 2 ? 3 : sides + (cells >>> corner & 1);
+    }
+
+    private static void markDirty(int[] dirtySlots, int slot) {
+        dirtySlots[0] = Math.min(dirtySlots[0], slot);
+        dirtySlots[1] = Math.max(dirtySlots[1], slot + 1);
+    }
+
+    private static boolean isInside(int x, int y, int z) {
+        return x >= 0 && x < SIZE && y >= 0 && y < SIZE && z >= 0 && z < SIZE;
+    }
+
+    private static int packPosition(int x, int y, int z) {
+        return x | (y << 5) | (z << 10);
+    }
+
+    /**
+     * Gets a block of the chunk, or of the neighbor holding it when coordinates are just outside the chunk.
+     */
+    private static short getBlock(Chunk chunk, Chunk[] neighbors, int x, int y, int z) {
+        if (isInside(x, y, z)) {
+            return chunk.getBlock(x, y, z);
+        }
+        int dx = x < 0 ? -1 : x >= SIZE ? 1 : 0;
+        int dy = y < 0 ? -1 : y >= SIZE ? 1 : 0;
+        int dz = z < 0 ? -1 : z >= SIZE ? 1 : 0;
+        int index = NEIGHBOR_INDICES[(dx + 1) + (dy + 1) * 3 + (dz + 1) * 9];
+        Chunk neighbor = neighbors != null && index < neighbors.length ? neighbors[index] : null;
+        return neighbor == null ? 0 : neighbor.getBlock(x - dx * SIZE, y - dy * SIZE, z - dz * SIZE);
+    }
+
+    private static int getOccupancyIndex(int y, int z) {
+        return (z + 1) + (y + 1) * MESH_SIZE;
+    }
+
+    private static int getDirection(long face) {
+        return (int) (face >>> 15) & 0x7;
+    }
+
+    /**
+     * Gets the flat index of a block in the mesh buffer. Local coordinates range from -1 to {@link Chunk#SIZE}.
+     */
+    private static int getMeshIndex(int x, int y, int z) {
+        return (x + 1) + ((z + 1) * MESH_SIZE) + ((y + 1) * MESH_SIZE * MESH_SIZE);
+    }
+
+    private static int encodeFaceData(int x, int y, int z, byte typeId, FaceDirection faceDir) {
+        return encodeFaceData(x, y, z, typeId, faceDir, 1, 1);
+    }
+
+    /**
+     * Packs a face and its occlusion into a face buffer entry, the face in the low int and the occlusion above.
+     */
+    private static long encodeFace(int faceData, int occlusion) {
+        return Integer.toUnsignedLong(faceData) | (long) occlusion << OCCLUSION_SHIFT;
+    }
+
+    /**
+     * Packs a quad into a single int: position on bits 0-14, face on bits 15-17, block type on bits 18-25,
+     * width - 1 on bits 26-28 and height - 1 on bits 29-31. See {@link #meshGreedy} for the quad axes.
+     */
+    public static int encodeFaceData(int x, int y, int z, byte typeId, FaceDirection faceDir, int width, int height) {
+        int encoded = 0;
+        encoded |= (x & 0x1F);
+        encoded |= (y & 0x1F) << 5;
+        encoded |= (z & 0x1F) << 10;
+        encoded |= faceDir.ordinal() << 15;
+        encoded |= (typeId & 0xFF) << 18;
+        encoded |= (width - 1) << 26;
+        encoded |= (height - 1) << 29;
+        return encoded;
+    }
+}
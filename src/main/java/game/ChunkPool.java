@@ -0,0 +1,155 @@
+package game;
+
+import game.utils.BlockPalette;
+import game.utils.NativeLongBuffer;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recycles the arrays released by unloaded chunks so that the next generation and meshing tasks reuse them
+ * instead of allocating. Section bit arrays are pooled per length, next to palettes and native face buffers.
+ * Each pool is bounded by the configured number of chunks; anything returned past that is left to the GC.
+ * <p>
+ * Chunk and section objects themselves are not recycled: queued updates and in-flight mesh tasks can still
+ * reference an unloaded chunk, and must keep seeing it as freed rather than as another chunk.
+ */
+public class ChunkPool {
+
+    private static final int SECTIONS_PER_CHUNK = Chunk.SECTIONS_PER_AXIS * Chunk.SECTIONS_PER_AXIS * Chunk.SECTIONS_PER_AXIS;
+    private static final int DATA_LENGTH_CLASSES = 3; // 4, 8 and 16 bits per block
+
+    private final int maxChunks;
+    private final ArrayBlockingQueue<long[]>[] dataPools;
+    private final ArrayBlockingQueue<BlockPalette> palettePool;
+    private final ArrayBlockingQueue<NativeLongBuffer> faceBufferPool;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxChunks Number of unloaded chunks whose arrays can be kept at most. 0 disables pooling.
+     */
+    @SuppressWarnings("unchecked")
+    public ChunkPool(int maxChunks) {
+        int capacity = Math.max(maxChunks, 1);
+        this.maxChunks = maxChunks;
+        this.dataPools = new ArrayBlockingQueue[DATA_LENGTH_CLASSES];
+        for (int i = 0; i < DATA_LENGTH_CLASSES; i++) {
+            dataPools[i] = new ArrayBlockingQueue<>(capacity * SECTIONS_PER_CHUNK);
+        }
+        this.palettePool = new ArrayBlockingQueue<>(capacity * SECTIONS_PER_CHUNK);
+        this.faceBufferPool = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Gets a zeroed bit array.
+     *
+     * @param length Array length, one of the section data lengths.
+     * @return A recycled array if one is available, a new one otherwise.
+     */
+    public long[] takeData(int length) {
+        long[] data = dataPools[dataClass(length)].poll();
+        if (data == null) {
+            misses.increment();
+            return new long[length];
+        }
+        hits.increment();
+        Arrays.fill(data, 0L);
+        return data;
+    }
+
+    public void recycleData(long[] data) {
+        if (maxChunks > 0) {
+            dataPools[dataClass(data.length)].offer(data);
+        }
+    }
+
+    /**
+     * Gets an empty palette.
+     */
+    public BlockPalette takePalette() {
+        BlockPalette palette = palettePool.poll();
+        if (palette == null) {
+            misses.increment();
+            return new BlockPalette();
+        }
+        hits.increment();
+        palette.clear();
+        return palette;
+    }
+
+    public void recyclePalette(BlockPalette palette) {
+        if (maxChunks > 0) {
+            palettePool.offer(palette);
+        }
+    }
+
+    /**
+     * Gets an empty face buffer, keeping the capacity it grew to in its previous chunk.
+     */
+    public NativeLongBuffer takeFaceBuffer() {
+        NativeLongBuffer faces = faceBufferPool.poll();
+        if (faces == null) {
+            misses.increment();
+            return new NativeLongBuffer();
+        }
+        hits.increment();
+        faces.clear();
+        return faces;
+    }
+
+    /**
+     * Returns a face buffer to the pool, or frees its native memory if the pool is full.
+     */
+    public void recycleFaceBuffer(NativeLongBuffer faces) {
+        if (maxChunks == 0 || !faceBufferPool.offer(faces)) {
+            faces.free();
+        }
+    }
+
+    /**
+     * Frees the native memory of the pooled face buffers.
+     */
+    public void release() {
+        NativeLongBuffer faces;
+        while ((faces = faceBufferPool.poll()) != null) {
+            faces.free();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Estimates the memory held by the pooled arrays, native face buffers included.
+     */
+    public long estimateRetainedBytes() {
+        long bytes = 0;
+        for (ArrayBlockingQueue<long[]> pool : dataPools) {
+            for (long[] data : pool) {
+                bytes += MemoryReport.arrayBytes(data.length, Long.BYTES);
+            }
+        }
+        for (BlockPalette palette : palettePool) {
+            bytes += palette.estimateRetainedBytes();
+        }
+        for (NativeLongBuffer faces : faceBufferPool) {
+            bytes += MemoryReport.objectBytes(Long.BYTES + 2 * Integer.BYTES) + (long) faces.getCapacity() * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the pool index of a section data length: 256, 512 or 1024 longs.
+     */
+    private static int dataClass(int length) {
+        return Integer.numberOfTrailingZeros(length) - 8;
+    }
+}
@@ -0,0 +1,426 @@
+package game;
+
+import game.utils.BlockPalette;
+import game.utils.SlabAllocator;
+import lombok.Getter;
+import org.lwjgl.system.MemoryUtil;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 16³ block storage inside a chunk. Each section is either uniform (a single block id, no arrays)
+ * or paletted over its own word-aligned bit array, independently of the other sections.
+ * <p>
+ * When {@link #OFF_HEAP} is set, bit arrays live in an off-heap slab with one size class per entry size
+ * instead of a {@code long[]}, and must be released with {@link #free()}.
+ */
+public class ChunkSection {
+    public static final int SIZE = 16;
+    public static final int SHIFT = 4;
+    public static final int MASK = SIZE - 1;
+    public static final int VOLUME = SIZE * SIZE * SIZE;
+
+    public static final boolean OFF_HEAP = Boolean.getBoolean("mineshit.offHeapChunks");
+    // Size classes for 4, 8 and 16 bits per block
+    public static final SlabAllocator ALLOCATOR = new SlabAllocator(
+            new int[]{VOLUME * 4 / 8, VOLUME * 8 / 8, VOLUME * 16 / 8}, 64, Boolean.getBoolean("mineshit.debugOffHeapLeaks"));
+
+    @Getter
+    private boolean isUniform;
+    @Getter
+    private short uniformBlockId;
+    private BlockPalette palette;
+    private int bitsPerBlock;
+    private long[] data;     // Heap bit array, null when off-heap
+    private long address;    // Off-heap bit array, 0 when on heap
+    // Owners of the section: its chunk and the snapshots reading it. Shared sections are never written
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    public ChunkSection(short blockId) {
+        this.isUniform = true;
+        this.uniformBlockId = blockId;
+    }
+
+    /**
+     * Gets the flat index of a block inside a section.
+     *
+     * @param x Section-local X.
+     * @param y Section-local Y.
+     * @param z Section-local Z.
+     * @return The flat block index.
+     */
+    public static int getIndex(int x, int y, int z) {
+        return x | (z << SHIFT) | (y << (2 * SHIFT));
+    }
+
+    public short get(int index) {
+        if (isUniform) {
+            return uniformBlockId;
+        }
+        return palette.get(readBlockData(index));
+    }
+
+    public void set(int index, short blockId) {
+        if (isUniform) {
+            if (blockId == uniformBlockId) return;
+            inflate();
+        }
+
+        int oldPaletteIndex = readBlockData(index);
+        if (palette.get(oldPaletteIndex) == blockId) return;
+
+        int paletteIndex = getOrAddPaletteIndex(blockId);
+        writeBlockData(index, paletteIndex);
+        palette.retain(paletteIndex, 1);
+        palette.release(oldPaletteIndex, 1);
+        compactIfNeeded();
+    }
+
+    /**
+     * Fills a box of blocks. Bounds are section-local, min inclusive and max exclusive.
+     */
+    public void fillBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, short blockId) {
+        if (minX == 0 && minY == 0 && minZ == 0 && maxX == SIZE && maxY == SIZE && maxZ == SIZE) {
+            fill(blockId);
+            return;
+        }
+
+        if (isUniform) {
+            if (blockId == uniformBlockId) return;
+            inflate();
+        }
+
+        int paletteIndex = getOrAddPaletteIndex(blockId);
+        for (int y = minY; y < maxY; y++) {
+            for (int z = minZ; z < maxZ; z++) {
+                int index = getIndex(minX, y, z);
+                for (int x = minX; x < maxX; x++, index++) {
+                    palette.release(readBlockData(index), 1);
+                    writeBlockData(index, paletteIndex);
+                }
+            }
+        }
+        palette.retain(paletteIndex, (maxX - minX) * (maxY - minY) * (maxZ - minZ));
+        compactIfNeeded();
+    }
+
+    /**
+     * Gets the entry size of the bit array.
+     *
+     * @return The bits per block, or 0 for a uniform section.
+     */
+    public int getBitsPerBlock() {
+        return isUniform ? 0 : bitsPerBlock;
+    }
+
+    public long estimateRetainedBytes() {
+        long bytes = MemoryReport.objectBytes(1 + Short.BYTES + Integer.BYTES + Long.BYTES + 2 * MemoryReport.REFERENCE_BYTES);
+        if (palette != null) {
+            bytes += palette.estimateRetainedBytes();
+        }
+        if (data != null) {
+            bytes += MemoryReport.arrayBytes(data.length, Long.BYTES);
+        }
+        return bytes;
+    }
+
+    public void fill(short blockId) {
+        releaseData(address, bitsPerBlock);
+        isUniform = true;
+        uniformBlockId = blockId;
+        palette = null;
+        data = null;
+        address = 0;
+    }
+
+    /**
+     * Releases the bit array and leaves the section uniform air.
+     */
+    public void free() {
+        if (!isUniform) {
+            if (data != null) {
+                Chunk.POOL.recycleData(data);
+            }
+            Chunk.POOL.recyclePalette(palette);
+        }
+        fill((short) 0);
+    }
+
+    /**
+     * Adds an owner to the section. A shared section must be copied with {@link #copy()} before being written.
+     */
+    public void retain() {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Removes an owner from the section, and frees it once the last owner is gone.
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            free();
+        }
+    }
+
+    public boolean isShared() {
+        return references.get() > 1;
+    }
+
+    /**
+     * Creates an independent copy of the section, with its own palette and bit array.
+     */
+    public ChunkSection copy() {
+        ChunkSection copy = new ChunkSection(uniformBlockId);
+        if (!isUniform) {
+            copy.isUniform = false;
+            copy.palette = Chunk.POOL.takePalette().copyFrom(palette);
+            copy.allocateData(bitsPerBlock);
+            if (address != 0) {
+                MemoryUtil.memCopy(address, copy.address, (long) dataLength(bitsPerBlock) * Long.BYTES);
+            } else {
+                System.arraycopy(data, 0, copy.data, 0, dataLength(bitsPerBlock));
+            }
+        }
+        return copy;
+    }
+
+    public boolean isOffHeap() {
+        return address != 0;
+    }
+
+    /**
+     * Replaces the section content. The palette is rebuilt and the bit array is packed one word at a time.
+     *
+     * @param blocks Block ids laid out as {@link #getIndex(int, int, int)}, {@link #VOLUME} long.
+     */
+    public void setBlocks(short[] blocks) {
+        BlockPalette newPalette = Chunk.POOL.takePalette();
+        short lastBlock = blocks[0];
+        newPalette.add(lastBlock);
+        for (int i = 1; i < VOLUME; i++) {
+            if (blocks[i] != lastBlock) {
+                lastBlock = blocks[i];
+                newPalette.getOrAdd(lastBlock);
+            }
+        }
+
+        if (newPalette.size() == 1) {
+            Chunk.POOL.recyclePalette(newPalette);
+            fill(blocks[0]);
+            return;
+        }
+
+        releaseData(address, bitsPerBlock);
+        isUniform = false;
+        palette = newPalette;
+        allocateData(bitsForPaletteSize(palette.size()));
+
+        int entriesPerLong = 64 / bitsPerBlock;
+        lastBlock = blocks[0];
+        long paletteIndex = palette.indexOf(lastBlock);
+        for (int arrayIndex = 0, index = 0, length = dataLength(bitsPerBlock); arrayIndex < length; arrayIndex++) {
+            long word = 0;
+            for (int i = 0, bitOffset = 0; i < entriesPerLong; i++, index++, bitOffset += bitsPerBlock) {
+                if (blocks[index] != lastBlock) {
+                    lastBlock = blocks[index];
+                    paletteIndex = palette.indexOf(lastBlock);
+                }
+                palette.retain((int) paletteIndex, 1);
+                word |= paletteIndex << bitOffset;
+            }
+            writeWord(arrayIndex, word);
+        }
+    }
+
+    /**
+     * Decodes the section content into a flat array, one 64-bit word at a time.
+     *
+     * @param blocks Destination array of at least {@link #VOLUME} entries, laid out as {@link #getIndex(int, int, int)}.
+     * @return The destination array.
+     */
+    public short[] getBlocks(short[] blocks) {
+        if (isUniform) {
+            Arrays.fill(blocks, 0, VOLUME, uniformBlockId);
+            return blocks;
+        }
+
+        int entriesPerLong = 64 / bitsPerBlock;
+        long valueMask = (1L << bitsPerBlock) - 1;
+        for (int arrayIndex = 0, index = 0, length = dataLength(bitsPerBlock); arrayIndex < length; arrayIndex++) {
+            long word = readWord(arrayIndex);
+            for (int i = 0; i < entriesPerLong; i++, index++) {
+                blocks[index] = palette.get((int) (word & valueMask));
+                word >>>= bitsPerBlock;
+            }
+        }
+        return blocks;
+    }
+
+    private void inflate() {
+        isUniform = false;
+        palette = Chunk.POOL.takePalette();
+        allocateData(4);
+
+        // Every entry of a zeroed array already points at palette index 0
+        palette.add(uniformBlockId);
+        palette.retain(0, VOLUME);
+    }
+
+    private int getOrAddPaletteIndex(short blockId) {
+        int paletteIndex = palette.indexOf(blockId);
+        if (paletteIndex == -1) {
+            paletteIndex = palette.add(blockId);
+            int requiredBits = bitsForPaletteSize(palette.size());
+            if (requiredBits != bitsPerBlock) {
+                repackData(requiredBits, null);
+            }
+        }
+        return paletteIndex;
+    }
+
+    /**
+     * Drops back to uniform storage when a single block id is left, and compacts the palette
+     * once it holds at least as many unused entries as used ones.
+     */
+    private void compactIfNeeded() {
+        if (palette.liveSize() == 1) {
+            for (int i = 0; i < palette.size(); i++) {
+                if (palette.getCount(i) > 0) {
+                    fill(palette.get(i));
+                    return;
+                }
+            }
+        }
+
+        if (palette.size() - palette.liveSize() >= palette.liveSize()) {
+            compactPalette();
+        }
+    }
+
+    private void compactPalette() {
+        BlockPalette newPalette = Chunk.POOL.takePalette();
+        int[] remap = new int[palette.size()];
+        for (int i = 0; i < palette.size(); i++) {
+            int count = palette.getCount(i);
+            if (count > 0) {
+                remap[i] = newPalette.add(palette.get(i));
+                newPalette.retain(remap[i], count);
+            }
+        }
+
+        palette = newPalette;
+        repackData(bitsForPaletteSize(palette.size()), remap);
+    }
+
+    /**
+     * Re-packs the data to another entry size, optionally remapping palette indices.
+     * Old words are decoded one at a time and new words are assembled in a register before being stored.
+     *
+     * @param newBitsPerBlock New entry size.
+     * @param remap           Old palette index -> new palette index, or null to keep indices.
+     */
+    private void repackData(int newBitsPerBlock, int[] remap) {
+        long[] oldData = data;
+        long oldAddress = address;
+        int oldBitsPerBlock = bitsPerBlock;
+        int oldEntriesPerLong = 64 / oldBitsPerBlock;
+        long oldMask = (1L << oldBitsPerBlock) - 1;
+        allocateData(newBitsPerBlock);
+
+        long newWord = 0;
+        int newBitOffset = 0;
+        int newArrayIndex = 0;
+        for (int arrayIndex = 0, length = dataLength(oldBitsPerBlock); arrayIndex < length; arrayIndex++) {
+            long word = readWord(oldData, oldAddress, arrayIndex);
+            for (int i = 0; i < oldEntriesPerLong; i++) {
+                long value = word & oldMask;
+                if (remap != null) {
+                    value = remap[(int) value];
+                }
+                newWord |= value << newBitOffset;
+                newBitOffset += newBitsPerBlock;
+                if (newBitOffset == 64) {
+                    writeWord(newArrayIndex++, newWord);
+                    newWord = 0;
+                    newBitOffset = 0;
+                }
+                word >>>= oldBitsPerBlock;
+            }
+        }
+
+        releaseData(oldAddress, oldBitsPerBlock);
+        if (oldData != null) {
+            Chunk.POOL.recycleData(oldData);
+        }
+    }
+
+    /**
+     * Allocates a zeroed bit array for an entry size, on heap or off-heap depending on {@link #OFF_HEAP}.
+     * The previous array is not released.
+     */
+    private void allocateData(int newBitsPerBlock) {
+        bitsPerBlock = newBitsPerBlock;
+        if (OFF_HEAP) {
+            data = null;
+            address = ALLOCATOR.allocate(sizeClass(newBitsPerBlock));
+        } else {
+            data = Chunk.POOL.takeData(dataLength(newBitsPerBlock));
+            address = 0;
+        }
+    }
+
+    private static void releaseData(long address, int bitsPerBlock) {
+        if (address != 0) {
+            ALLOCATOR.free(sizeClass(bitsPerBlock), address);
+        }
+    }
+
+    private static int sizeClass(int bitsPerBlock) {
+        return Integer.numberOfTrailingZeros(bitsPerBlock) - 2;
+    }
+
+    private long readWord(int arrayIndex) {
+        return readWord(data, address, arrayIndex);
+    }
+
+    private static long readWord(long[] data, long address, int arrayIndex) {
+        return address != 0 ? MemoryUtil.memGetLong(address + ((long) arrayIndex << 3)) : data[arrayIndex];
+    }
+
+    private void writeWord(int arrayIndex, long word) {
+        if (address != 0) {
+            MemoryUtil.memPutLong(address + ((long) arrayIndex << 3), word);
+        } else {
+            data[arrayIndex] = word;
+        }
+    }
+
+    /**
+     * Gets the entry size for a palette. Sizes are powers of two so that entries never straddle two longs.
+     */
+    private static int bitsForPaletteSize(int paletteSize) {
+        int requiredBits = 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+        if (requiredBits <= 4) return 4;
+        if (requiredBits <= 8) return 8;
+        return 16;
+    }
+
+    private static int dataLength(int bitsPerBlock) {
+        return VOLUME / (64 / bitsPerBlock);
+    }
+
+    private void writeBlockData(int index, int paletteIndex) {
+        int bitIndex = index * bitsPerBlock;
+        int arrayIndex = bitIndex >>> 6;
+        int bitOffset = bitIndex & 63;
+
+        long mask = ((1L << bitsPerBlock) - 1L) << bitOffset;
+        writeWord(arrayIndex, (readWord(arrayIndex) & ~mask) | ((long) paletteIndex << bitOffset));
+    }
+
+    private int readBlockData(int index) {
+        int bitIndex = index * bitsPerBlock;
+        return (int) ((readWord(bitIndex >>> 6) >>> (bitIndex & 63)) & ((1L << bitsPerBlock) - 1));
+    }
+}
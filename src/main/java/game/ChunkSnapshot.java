@@ -0,0 +1,83 @@
+package game;
+
+import lombok.Getter;
+import org.joml.Vector3i;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Immutable view of a chunk content at a given version. The snapshot shares the chunk storage;
+ * the chunk copies a section, its column runs or its summary before writing to any of them
+ * while a snapshot is open, so workers can mesh, light or serialize a snapshot without locking
+ * while the chunk keeps being edited.
+ * <p>
+ * Snapshots hold a reference on the sections they read and must be closed.
+ */
+public class ChunkSnapshot implements AutoCloseable {
+
+    @Getter
+    private final Vector3i position;
+    @Getter
+    private final long version;
+    private final ChunkSection[] sections;
+    private final ColumnStorage columns;
+    @Getter
+    private final ChunkSummary summary;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    ChunkSnapshot(Vector3i position, long version, ChunkSection[] sections, ColumnStorage columns, ChunkSummary summary) {
+        this.position = position;
+        this.version = version;
+        this.sections = sections;
+        this.columns = columns;
+        this.summary = summary;
+    }
+
+    public short getBlock(int x, int y, int z) {
+        return Chunk.readBlock(sections, columns, x, y, z);
+    }
+
+    /**
+     * Decodes the whole snapshot into a flat array.
+     *
+     * @param blocks Destination array of at least {@link Chunk#TOTAL_BLOCKS} entries, laid out as {@link Chunk#getBlockIndex(int, int, int)}.
+     * @return The destination array.
+     */
+    public short[] getBlocks(short[] blocks) {
+        return Chunk.readBlocks(sections, columns, blocks);
+    }
+
+    /**
+     * Checks whether every block of the snapshot has the same id, see {@link Chunk#isUniform()}.
+     */
+    public boolean isUniform() {
+        return Chunk.isUniform(sections, columns);
+    }
+
+    public short getUniformBlockId() {
+        return Chunk.getUniformBlockId(sections, columns);
+    }
+
+    ChunkSection getSection(int index) {
+        return sections[index];
+    }
+
+    /**
+     * Gets the column runs, or null if the chunk used paletted sections when the snapshot was taken.
+     */
+    ColumnStorage getColumns() {
+        return columns;
+    }
+
+    /**
+     * Releases the sections. Closing twice has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            for (ChunkSection section : sections) {
+                section.release();
+            }
+        }
+    }
+}
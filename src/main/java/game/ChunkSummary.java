@@ -0,0 +1,194 @@
+package game;
+
+import game.utils.FaceDirection;
+
+import java.util.Arrays;
+
+/**
+ * Occupancy summary of a chunk: a heightmap and the number of solid (non-air) blocks in the chunk
+ * and on each of its six boundary planes. It is kept up to date by every write to the chunk, so the
+ * mesher and the world can tell empty, solid and enclosed chunks apart without reading any block.
+ */
+public class ChunkSummary {
+    private static final int PLANE_BLOCKS = Chunk.SIZE * Chunk.SIZE;
+
+    private final byte[] heightmap = new byte[Chunk.SIZE * Chunk.SIZE]; // Column -> Y above the highest solid block, 0 if empty
+    private final int[] faceSolidCounts = new int[FaceDirection.values().length];
+    private int solidCount;
+
+    /**
+     * Recomputes the summary from a full chunk content.
+     *
+     * @param blocks Block ids laid out as {@link Chunk#getBlockIndex(int, int, int)}.
+     */
+    void rebuild(short[] blocks) {
+        solidCount = 0;
+        Arrays.fill(heightmap, (byte) 0);
+        for (int y = 0, index = 0; y < Chunk.SIZE; y++) {
+            for (int column = 0; column < Chunk.SIZE * Chunk.SIZE; column++, index++) {
+                if (blocks[index] != 0) {
+                    solidCount++;
+                    heightmap[column] = (byte) (y + 1);
+                }
+            }
+        }
+
+        Arrays.fill(faceSolidCounts, 0);
+        for (int v = 0; v < Chunk.SIZE; v++) {
+            for (int u = 0; u < Chunk.SIZE; u++) {
+                countSolid(FaceDirection.BACK, blocks[Chunk.getBlockIndex(u, v, 0)]);
+                countSolid(FaceDirection.FRONT, blocks[Chunk.getBlockIndex(u, v, Chunk.SIZE - 1)]);
+                countSolid(FaceDirection.LEFT, blocks[Chunk.getBlockIndex(0, v, u)]);
+                countSolid(FaceDirection.RIGHT, blocks[Chunk.getBlockIndex(Chunk.SIZE - 1, v, u)]);
+                countSolid(FaceDirection.BOTTOM, blocks[Chunk.getBlockIndex(u, 0, v)]);
+                countSolid(FaceDirection.TOP, blocks[Chunk.getBlockIndex(u, Chunk.SIZE - 1, v)]);
+            }
+        }
+    }
+
+    /**
+     * Resets the summary to a chunk filled with a single block id.
+     */
+    void fill(boolean isSolid) {
+        solidCount = isSolid ? Chunk.TOTAL_BLOCKS : 0;
+        Arrays.fill(heightmap, (byte) (isSolid ? Chunk.SIZE : 0));
+        Arrays.fill(faceSolidCounts, isSolid ? PLANE_BLOCKS : 0);
+    }
+
+    /**
+     * Updates the summary after a single block went from air to solid or back.
+     *
+     * @param chunk   The chunk, already holding the new block, used to find the new column height.
+     * @param isSolid Whether the block is now solid.
+     */
+    void onBlockChanged(Chunk chunk, int x, int y, int z, boolean isSolid) {
+        countChange(x, y, z, isSolid ? 1 : -1);
+
+        int column = x + z * Chunk.SIZE;
+        if (isSolid) {
+            if (y >= heightmap[column]) {
+                heightmap[column] = (byte) (y + 1);
+            }
+        } else if (y == heightmap[column] - 1) {
+            int height = y;
+            while (height > 0 && chunk.getBlock(x, height - 1, z) == 0) {
+                height--;
+            }
+            heightmap[column] = (byte) height;
+        }
+    }
+
+    /**
+     * Updates the summary for a box about to be filled with a single block id. Called before the chunk is
+     * written, as the old blocks of the box tell which ones change. Only the box and, when it is emptied,
+     * the columns under it are read.
+     *
+     * @param chunk   The chunk, still holding the old blocks.
+     * @param isSolid Whether the box is filled with solid blocks.
+     */
+    void onBoxFilled(Chunk chunk, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, boolean isSolid) {
+        int delta = isSolid ? 1 : -1;
+        for (int z = minZ; z < maxZ; z++) {
+            for (int x = minX; x < maxX; x++) {
+                for (int y = minY; y < maxY; y++) {
+                    if ((chunk.getBlock(x, y, z) != 0) != isSolid) {
+                        countChange(x, y, z, delta);
+                    }
+                }
+
+                int column = x + z * Chunk.SIZE;
+                if (isSolid) {
+                    heightmap[column] = (byte) Math.max(heightmap[column], maxY);
+                } else if (heightmap[column] > minY && heightmap[column] <= maxY) {
+                    // The highest solid block was in the box: look for the next one under it
+                    int height = minY;
+                    while (height > 0 && chunk.getBlock(x, height - 1, z) == 0) {
+                        height--;
+                    }
+                    heightmap[column] = (byte) height;
+                }
+            }
+        }
+    }
+
+    private void countChange(int x, int y, int z, int delta) {
+        solidCount += delta;
+        if (z == 0) faceSolidCounts[FaceDirection.BACK.ordinal()] += delta;
+        if (z == Chunk.SIZE - 1) faceSolidCounts[FaceDirection.FRONT.ordinal()] += delta;
+        if (x == 0) faceSolidCounts[FaceDirection.LEFT.ordinal()] += delta;
+        if (x == Chunk.SIZE - 1) faceSolidCounts[FaceDirection.RIGHT.ordinal()] += delta;
+        if (y == 0) faceSolidCounts[FaceDirection.BOTTOM.ordinal()] += delta;
+        if (y == Chunk.SIZE - 1) faceSolidCounts[FaceDirection.TOP.ordinal()] += delta;
+    }
+
+    /**
+     * Creates an independent copy of the summary.
+     */
+    ChunkSummary copy() {
+        ChunkSummary copy = new ChunkSummary();
+        System.arraycopy(heightmap, 0, copy.heightmap, 0, heightmap.length);
+        System.arraycopy(faceSolidCounts, 0, copy.faceSolidCounts, 0, faceSolidCounts.length);
+        copy.solidCount = solidCount;
+        return copy;
+    }
+
+    /**
+     * Gets the height of a column.
+     *
+     * @return The Y above the highest solid block of the column, 0 if the column is empty.
+     */
+    public int getHeight(int x, int z) {
+        return heightmap[x + z * Chunk.SIZE];
+    }
+
+    /**
+     * Gets the highest column height over a square of columns.
+     */
+    public int getMaxHeight(int minX, int minZ, int size) {
+        int maxHeight = 0;
+        for (int z = minZ; z < minZ + size; z++) {
+            for (int x = minX, column = minX + z * Chunk.SIZE; x < minX + size; x++, column++) {
+                maxHeight = Math.max(maxHeight, heightmap[column]);
+            }
+        }
+        return maxHeight;
+    }
+
+    public int getMaxHeight() {
+        return getMaxHeight(0, 0, Chunk.SIZE);
+    }
+
+    public boolean isEmpty() {
+        return solidCount == 0;
+    }
+
+    public boolean isFullySolid() {
+        return solidCount == Chunk.TOTAL_BLOCKS;
+    }
+
+    /**
+     * Checks whether every block of a boundary plane is solid.
+     */
+    public boolean isFaceSolid(FaceDirection face) {
+        return faceSolidCounts[face.ordinal()] == PLANE_BLOCKS;
+    }
+
+    /**
+     * Checks whether every block of a boundary plane is air.
+     */
+    public boolean isFaceEmpty(FaceDirection face) {
+        return faceSolidCounts[face.ordinal()] == 0;
+    }
+
+    public long estimateRetainedBytes() {
+        return MemoryReport.objectBytes(2 * MemoryReport.REFERENCE_BYTES + Integer.BYTES)
+                + MemoryReport.arrayBytes(heightmap.length, Byte.BYTES)
+                + MemoryReport.arrayBytes(faceSolidCounts.length, Integer.BYTES);
+    }
+
+    private void countSolid(FaceDirection face, short blockId) {
+        if (blockId != 0) {
+            faceSolidCounts[face.ordinal()]++;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Run-length block storage for a whole chunk, one list of vertical runs per (x, z) column.
+ * Layered terrain holds a handful of runs per column, so lookups are a short binary search and
+ * the mesher can emit faces from run boundaries instead of visiting every block.
+ * <p>
+ * Runs of all columns are stored back to back. Column {@code c} owns the runs from {@code offsets[c]}
+ * (inclusive) to {@code offsets[c + 1]} (exclusive), ordered bottom to top. Each run stores its block id
+ * and its exclusive top Y; its bottom is the top of the previous run of the column, or 0.
+ * Adjacent runs of a column never share a block id.
+ */
+public class ColumnStorage {
+    public static final int COLUMNS = Chunk.SIZE * Chunk.SIZE;
+    // An edit that fragments a column beyond this makes the chunk fall back to paletted sections
+    public static final int MAX_RUNS_PER_COLUMN = 8;
+
+    private static final ThreadLocal<int[]> CURSOR_BUFFER = ThreadLocal.withInitial(() -> new int[COLUMNS]);
+
+    private final char[] offsets;   // Column -> First run, COLUMNS + 1 entries
+    private short[] runBlocks;      // Run -> Block id
+    private byte[] runTops;         // Run -> Exclusive top Y
+    private int runCount;
+
+    private ColumnStorage(char[] offsets, short[] runBlocks, byte[] runTops, int runCount) {
+        this.offsets = offsets;
+        this.runBlocks = runBlocks;
+        this.runTops = runTops;
+        this.runCount = runCount;
+    }
+
+    /**
+     * Gets the column index of a local (x, z) position.
+     */
+    public static int getColumnIndex(int x, int z) {
+        return x + z * Chunk.SIZE;
+    }
+
+    /**
+     * Encodes a chunk content as column runs.
+     *
+     * @param blocks             Block ids laid out as {@link Chunk#getBlockIndex(int, int, int)}.
+     * @param maxRunsPerColumn   Largest number of runs allowed in a single column.
+     * @return The storage, or null if a column needs more runs than allowed.
+     */
+    public static ColumnStorage fromBlocks(short[] blocks, int maxRunsPerColumn) {
+        char[] offsets = new char[COLUMNS + 1];
+        int totalRuns = 0;
+        for (int column = 0; column < COLUMNS; column++) {
+            offsets[column] = (char) totalRuns;
+            int runs = 1;
+            short lastBlock = blocks[column];
+            for (int y = 1, index = column + Chunk.SIZE * Chunk.SIZE; y < Chunk.SIZE; y++, index += Chunk.SIZE * Chunk.SIZE) {
+                if (blocks[index] != lastBlock) {
+                    lastBlock = blocks[index];
+                    runs++;
+                }
+            }
+            if (runs > maxRunsPerColumn) {
+                return null;
+            }
+            totalRuns += runs;
+        }
+        offsets[COLUMNS] = (char) totalRuns;
+
+        short[] runBlocks = new short[totalRuns];
+        byte[] runTops = new byte[totalRuns];
+        for (int column = 0, run = 0; column < COLUMNS; column++) {
+            short lastBlock = blocks[column];
+            for (int y = 1, index = column + Chunk.SIZE * Chunk.SIZE; y < Chunk.SIZE; y++, index += Chunk.SIZE * Chunk.SIZE) {
+                if (blocks[index] != lastBlock) {
+                    runBlocks[run] = lastBlock;
+                    runTops[run++] = (byte) y;
+                    lastBlock = blocks[index];
+                }
+            }
+            runBlocks[run] = lastBlock;
+            runTops[run++] = (byte) Chunk.SIZE;
+        }
+        return new ColumnStorage(offsets, runBlocks, runTops, totalRuns);
+    }
+
+    /**
+     * Creates an independent copy of the runs, trimmed to the used length.
+     */
+    public ColumnStorage copy() {
+        return new ColumnStorage(offsets.clone(), Arrays.copyOf(runBlocks, runCount), Arrays.copyOf(runTops, runCount), runCount);
+    }
+
+    public short get(int x, int y, int z) {
+        return runBlocks[findRun(getColumnIndex(x, z), y)];
+    }
+
+    /**
+     * Sets a single block, splitting and merging the runs of its column.
+     *
+     * @return False if the column would need more than {@link #MAX_RUNS_PER_COLUMN} runs, in which case nothing is changed.
+     */
+    public boolean set(int x, int y, int z, short blockId) {
+        int column = getColumnIndex(x, z);
+        int run = findRun(column, y);
+        short oldBlock = runBlocks[run];
+        if (oldBlock == blockId) return true;
+
+        int start = offsets[column];
+        int end = offsets[column + 1];
+        int bottom = run == start ? 0 : runTops[run - 1];
+        int top = runTops[run];
+
+        // Rebuild the column runs in scratch arrays, merging the new run with equal neighbors
+        short[] newBlocks = new short[end - start + 2];
+        byte[] newTops = new byte[end - start + 2];
+        int count = 0;
+        for (int i = start; i < run; i++) {
+            newBlocks[count] = runBlocks[i];
+            newTops[count++] = runTops[i];
+        }
+        if (y > bottom) {
+            newBlocks[count] = oldBlock;
+            newTops[count++] = (byte) y;
+        }
+        if (count > 0 && newBlocks[count - 1] == blockId) {
+            newTops[count - 1] = (byte) (y + 1);
+        } else {
+            newBlocks[count] = blockId;
+            newTops[count++] = (byte) (y + 1);
+        }
+        if (y + 1 < top) {
+            newBlocks[count] = oldBlock;
+            newTops[count++] = (byte) top;
+        }
+        for (int i = run + 1; i < end; i++) {
+            if (newBlocks[count - 1] == runBlocks[i]) {
+                newTops[count - 1] = runTops[i];
+            } else {
+                newBlocks[count] = runBlocks[i];
+                newTops[count++] = runTops[i];
+            }
+        }
+
+        if (count > MAX_RUNS_PER_COLUMN) {
+            return false;
+        }
+
+        int delta = count - (end - start);
+        if (delta != 0) {
+            if (runCount + delta > runBlocks.length) {
+                runBlocks = Arrays.copyOf(runBlocks, Math.max(runBlocks.length * 2, runCount + delta));
+                runTops = Arrays.copyOf(runTops, runBlocks.length);
+            }
+            System.arraycopy(runBlocks, end, runBlocks, end + delta, runCount - end);
+            System.arraycopy(runTops, end, runTops, end + delta, runCount - end);
+            for (int i = column + 1; i <= COLUMNS; i++) {
+                offsets[i] += (char) delta;
+            }
+            runCount += delta;
+        }
+        System.arraycopy(newBlocks, 0, runBlocks, start, count);
+        System.arraycopy(newTops, 0, runTops, start, count);
+        return true;
+    }
+
+    /**
+     * Decodes the runs into a flat array.
+     *
+     * @param blocks Destination array laid out as {@link Chunk#getBlockIndex(int, int, int)}.
+     * @return The destination array.
+     */
+    public short[] getBlocks(short[] blocks) {
+        // Layers are written in order with one run cursor per column, so the destination is filled sequentially
+        int[] cursors = CURSOR_BUFFER.get();
+        for (int column = 0; column < COLUMNS; column++) {
+            cursors[column] = offsets[column];
+        }
+
+        for (int y = 0, index = 0; y < Chunk.SIZE; y++) {
+            for (int column = 0; column < COLUMNS; column++, index++) {
+                int run = cursors[column];
+                if (runTops[run] <= y) {
+                    cursors[column] = ++run;
+                }
+                blocks[index] = runBlocks[run];
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Checks whether every column is a single run of the same block id.
+     */
+    public boolean isUniform() {
+        if (runCount != COLUMNS) return false;
+        for (int run = 1; run < runCount; run++) {
+            if (runBlocks[run] != runBlocks[0]) return false;
+        }
+        return true;
+    }
+
+    public short getUniformBlockId() {
+        return runBlocks[0];
+    }
+
+    public int getRunStart(int column) {
+        return offsets[column];
+    }
+
+    public int getRunEnd(int column) {
+        return offsets[column + 1];
+    }
+
+    public short getRunBlock(int run) {
+        return runBlocks[run];
+    }
+
+    public int getRunTop(int run) {
+        return runTops[run];
+    }
+
+    public int getRunCount() {
+        return runCount;
+    }
+
+    public long estimateRetainedBytes() {
+        return MemoryReport.objectBytes(3 * MemoryReport.REFERENCE_BYTES + Integer.BYTES)
+                + MemoryReport.arrayBytes(offsets.length, Character.BYTES)
+                + MemoryReport.arrayBytes(runBlocks.length, Short.BYTES)
+                + MemoryReport.arrayBytes(runTops.length, Byte.BYTES);
+    }
+
+    /**
+     * Finds the run of a column containing a Y, by binary search on the run tops.
+     */
+    private int findRun(int column, int y) {
+        int low = offsets[column];
+        int high = offsets[column + 1] - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (runTops[mid] > y) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
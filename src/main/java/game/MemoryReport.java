@@ -0,0 +1,159 @@
+package game;
+
+import lombok.Getter;
+
+/**
+ * Heap usage estimate of the loaded world, broken down by chunk storage mode.
+ * Sizes assume a 64-bit JVM with compressed oops: 12-byte object headers, 16-byte array headers, 8-byte alignment.
+ */
+@Getter
+public class MemoryReport {
+
+    public static final int OBJECT_HEADER_BYTES = 12;
+    public static final int ARRAY_HEADER_BYTES = 16;
+    public static final int REFERENCE_BYTES = 4;
+
+    private static final int MAX_BITS_PER_BLOCK = 16;
+
+    private int chunkCount;
+    private int uniformChunkCount;
+    private long chunkOverheadBytes;
+
+    private int uniformSectionCount;
+    private long uniformSectionBytes;
+    private final int[] palettedSectionCounts = new int[MAX_BITS_PER_BLOCK + 1]; // Bits per block -> Section count
+    private final long[] palettedSectionBytes = new long[MAX_BITS_PER_BLOCK + 1];
+
+    private int columnChunkCount;
+    private long columnRunCount;
+    private long columnBytes;
+
+    private int meshedChunkCount;
+    private long faceCount;
+    private long meshBytes;
+
+    private long offHeapUsedBytes;
+    private long offHeapReservedBytes;
+
+    private long poolHits;
+    private long poolMisses;
+    private long poolBytes;
+
+    private int meshCacheEntries;
+    private long meshCacheBytes;
+
+    private int pendingUpdates;
+    private int pendingTasks;
+
+    public static long objectBytes(int fieldBytes) {
+        return align(OBJECT_HEADER_BYTES + fieldBytes);
+    }
+
+    public static long arrayBytes(int length, int elementBytes) {
+        return align(ARRAY_HEADER_BYTES + (long) length * elementBytes);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    void addChunk(boolean isUniform, long overheadBytes) {
+        chunkCount++;
+        if (isUniform) {
+            uniformChunkCount++;
+        }
+        chunkOverheadBytes += overheadBytes;
+    }
+
+    void addSection(int bitsPerBlock, long bytes) {
+        if (bitsPerBlock == 0) {
+            uniformSectionCount++;
+            uniformSectionBytes += bytes;
+        } else {
+            palettedSectionCounts[bitsPerBlock]++;
+            palettedSectionBytes[bitsPerBlock] += bytes;
+        }
+    }
+
+    void addColumns(int runs, long bytes) {
+        columnChunkCount++;
+        columnRunCount += runs;
+        columnBytes += bytes;
+    }
+
+    void addMesh(int faces, long bytes) {
+        meshedChunkCount++;
+        faceCount += faces;
+        meshBytes += bytes;
+    }
+
+    void setOffHeap(long usedBytes, long reservedBytes) {
+        this.offHeapUsedBytes = usedBytes;
+        this.offHeapReservedBytes = reservedBytes;
+    }
+
+    void setPool(long hits, long misses, long bytes) {
+        this.poolHits = hits;
+        this.poolMisses = misses;
+        this.poolBytes = bytes;
+    }
+
+    void setMeshCache(int entries, long bytes) {
+        this.meshCacheEntries = entries;
+        this.meshCacheBytes = bytes;
+    }
+
+    void setPending(int pendingUpdates, int pendingTasks) {
+        this.pendingUpdates = pendingUpdates;
+        this.pendingTasks = pendingTasks;
+    }
+
+    public long getPalettedSectionBytes() {
+        long total = 0;
+        for (long bytes : palettedSectionBytes) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    public long getVoxelBytes() {
+        return chunkOverheadBytes + uniformSectionBytes + getPalettedSectionBytes() + columnBytes;
+    }
+
+    public long getTotalBytes() {
+        return getVoxelBytes() + meshBytes + poolBytes + meshCacheBytes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Chunks: %d (%d uniform), %s overhead%n",
+                chunkCount, uniformChunkCount, formatBytes(chunkOverheadBytes)));
+        builder.append(String.format("  Uniform sections: %d, %s%n", uniformSectionCount, formatBytes(uniformSectionBytes)));
+        for (int bits = 1; bits <= MAX_BITS_PER_BLOCK; bits++) {
+            if (palettedSectionCounts[bits] > 0) {
+                builder.append(String.format("  Paletted sections (%d bits): %d, %s%n",
+                        bits, palettedSectionCounts[bits], formatBytes(palettedSectionBytes[bits])));
+            }
+        }
+        if (columnChunkCount > 0) {
+            builder.append(String.format("  Column runs: %d chunks, %d runs, %s%n", columnChunkCount, columnRunCount, formatBytes(columnBytes)));
+        }
+        if (offHeapReservedBytes > 0) {
+            builder.append(String.format("  Off-heap section data: %s used, %s reserved%n",
+                    formatBytes(offHeapUsedBytes), formatBytes(offHeapReservedBytes)));
+        }
+        builder.append(String.format("Meshes: %d chunks, %d faces, %s%n", meshedChunkCount, faceCount, formatBytes(meshBytes)));
+        builder.append(String.format("Pool: %d hits, %d misses, %s pooled%n", poolHits, poolMisses, formatBytes(poolBytes)));
+        builder.append(String.format("Mesh cache: %d entries, %s%n", meshCacheEntries, formatBytes(meshCacheBytes)));
+        builder.append(String.format("Pending: %d buffer updates, %d tasks%n", pendingUpdates, pendingTasks));
+        builder.append(String.format("Total: %s heap, %s off-heap", formatBytes(getTotalBytes()), formatBytes(offHeapReservedBytes)));
+        return builder.toString();
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KiB", bytes / 1024.0);
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,179 @@
+package game;
+
+import game.utils.NativeLongBuffer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of face lists keyed by a hash of the content they were meshed from: the decoded blocks,
+ * the neighbor border cells and the mesh settings. A chunk unloaded then generated again when the camera
+ * comes back, or any chunk with the same content, gets its faces back without being meshed. The least
+ * recently used entries are evicted once the byte budget is exceeded.
+ * <p>
+ * Keys are 64-bit hashes and the content itself is not kept, so two contents with the same hash would
+ * share their faces. At 64 bits this is not expected to happen within a session.
+ */
+public class MeshCache {
+
+    private static final long ENTRY_OVERHEAD_BYTES = 64; // Map node, boxed key and entry object
+
+    private final long maxBytes;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+
+    /**
+     * @param maxBytes Heap the cached faces may take at most. 0 disables the cache.
+     */
+    public MeshCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Hashes the content a face list is built from.
+     *
+     * @param blocks   Decoded blocks of the chunk.
+     * @param planes   Neighbor border cells, edges and corners included.
+     * @param settings Mesh settings the faces depend on, such as the mode and whether occlusion is computed.
+     */
+    public long hash(short[] blocks, short[] planes, int settings) {
+        long startTime = System.nanoTime();
+        long hash = mix(settings + 0x9E3779B97F4A7C15L);
+        hash = hashShorts(hash, blocks, Chunk.TOTAL_BLOCKS);
+        hash = hashShorts(hash, planes, planes.length);
+        hashNanos.add(System.nanoTime() - startTime);
+        return mix(hash);
+    }
+
+    /**
+     * Appends the cached faces of a content to a face list.
+     *
+     * @return False if the content is not cached, in which case the list is left untouched.
+     */
+    public boolean fetch(long key, NativeLongBuffer faces) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.increment();
+            return false;
+        }
+        // Cached arrays are never written, so they are copied outside of the lock
+        faces.addAll(entry.faces);
+        hits.increment();
+        savedNanos.add(entry.meshNanos);
+        return true;
+    }
+
+    /**
+     * Caches the faces meshed from a content, evicting the least recently used entries past the budget.
+     *
+     * @param faces     Face list holding the faces.
+     * @param from      Index of the first face of the content in the list.
+     * @param meshNanos Time the faces took to mesh, saved by each later hit.
+     */
+    public void put(long key, NativeLongBuffer faces, int from, long meshNanos) {
+        long[] values = faces.toArray(from, faces.size());
+        long bytes = MemoryReport.arrayBytes(values.length, Long.BYTES) + ENTRY_OVERHEAD_BYTES;
+        if (bytes > maxBytes) return;
+
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(values, bytes, meshNanos));
+            if (previous != null) {
+                usedBytes -= previous.bytes;
+            }
+            usedBytes += bytes;
+
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (usedBytes > maxBytes && iterator.hasNext()) {
+                usedBytes -= iterator.next().bytes;
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Formats the hit rate, the memory used and the time saved since the previous report, then resets the counters.
+     * Saved time is the meshing time of the hits, hashing time is paid on every lookup.
+     */
+    public String report() {
+        long hitCount = hits.sumThenReset();
+        long lookups = hitCount + misses.sumThenReset();
+        return String.format("mesh cache: %d hits of %d lookups (%.1f%%), %d entries, %.1f MiB, %.1f ms saved, %.1f ms hashing, %d evictions",
+                hitCount, lookups, lookups == 0 ? 0 : 100.0 * hitCount / lookups, getEntryCount(), getUsedBytes() / (1024.0 * 1024.0),
+                savedNanos.sumThenReset() / 1e6, hashNanos.sumThenReset() / 1e6, evictions.sumThenReset());
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Hashes four values per step, {@code length} being a multiple of 4.
+     */
+    private static long hashShorts(long hash, short[] values, int length) {
+        for (int i = 0; i < length; i += 4) {
+            long word = (values[i] & 0xFFFFL) | (values[i + 1] & 0xFFFFL) << 16
+                    | (values[i + 2] & 0xFFFFL) << 32 | (long) values[i + 3] << 48;
+            hash = Long.rotateLeft(hash ^ word * 0x9E3779B97F4A7C15L, 27) * 0xC2B2AE3D27D4EB4FL;
+        }
+        return hash;
+    }
+
+    /**
+     * Spreads every bit of the input over the whole result, as in the MurmurHash3 finalizer.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static class Entry {
+        private final long[] faces;
+        private final long bytes;
+        private final long meshNanos;
+
+        private Entry(long[] faces, long bytes, long meshNanos) {
+            this.faces = faces;
+            this.bytes = bytes;
+            this.meshNanos = meshNanos;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package game;
+
+import lombok.Getter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One stage of the chunk pipeline: a fixed number of workers fed by a bounded queue. Each task is timed
+ * from its submission to its start and from its start to its end, see {@link StageMetrics}.
+ * <p>
+ * The queue bound gives backpressure between stages: the workers of a stage feeding a full stage wait for
+ * room with {@link #submit}, while the render thread, which must never wait, uses {@link #trySubmit}
+ * and keeps what does not fit for a later frame.
+ */
+public class PipelineStage {
+
+    private final ThreadPoolExecutor executor;
+    @Getter
+    private final StageMetrics metrics;
+
+    /**
+     * @param name          Stage name, used for the worker threads and the metrics.
+     * @param workers       Number of worker threads.
+     * @param queueCapacity Number of tasks that can wait for a worker.
+     */
+    public PipelineStage(String name, int workers, int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.metrics = new StageMetrics(name);
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> new Thread(runnable, name + "-" + threadCount.incrementAndGet()));
+        // Workers must be running before tasks are put in the queue directly, see submit
+        executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Queues a task if there is room.
+     *
+     * @return False if the queue is full or the stage is shut down.
+     */
+    public boolean trySubmit(Runnable task) {
+        try {
+            executor.execute(timed(task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Queues a task, waiting for room when the queue is full. Tasks submitted after shutdown are dropped.
+     */
+    public void submit(Runnable task) {
+        if (executor.isShutdown()) return;
+        try {
+            executor.getQueue().put(timed(task));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Runnable timed(Runnable task) {
+        long submitTime = System.nanoTime();
+        return () -> {
+            long startTime = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                metrics.record(startTime - submitTime, System.nanoTime() - startTime);
+            }
+        };
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Formats the stage metrics along with the queue size, see {@link StageMetrics#report()}.
+     */
+    public String report() {
+        return metrics.report() + ", " + getQueueSize() + " queued";
+    }
+
+    /**
+     * Stops the workers once the queued tasks are done, interrupting them after the timeout, then waiting
+     * for them as long again. Tasks that ignore interrupts, such as meshing, may still be running after that.
+     *
+     * @return False if a worker is still running or the current thread was interrupted while waiting,
+     *         in which case the data the tasks read must not be released.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, unit)) {
+                executor.shutdownNow();
+                return executor.awaitTermination(timeout, unit);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package game;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and latency counters of a chunk pipeline stage. The latency of each chunk is split between
+ * the wait before the stage handles it (queue, missing neighbors) and the handling itself.
+ * Counters cover the time since the previous report and are reset by {@link #report()}.
+ */
+public class StageMetrics {
+
+    @Getter
+    private final String name;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Long::max, 0);
+    private final LongAccumulator maxRunNanos = new LongAccumulator(Long::max, 0);
+    private long lastReportTime = System.nanoTime();
+
+    public StageMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records one chunk handled by the stage.
+     *
+     * @param waitNanos Time between the chunk reaching the stage and the stage starting on it.
+     * @param runNanos  Time spent handling it, 0 for stages that only wait.
+     */
+    public void record(long waitNanos, long runNanos) {
+        completed.increment();
+        this.waitNanos.add(waitNanos);
+        this.runNanos.add(runNanos);
+        maxWaitNanos.accumulate(waitNanos);
+        maxRunNanos.accumulate(runNanos);
+    }
+
+    /**
+     * Formats the counters since the previous report, then resets them.
+     */
+    public synchronized String report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastReportTime, 1) / 1e9;
+        lastReportTime = now;
+
+        long count = completed.sumThenReset();
+        long totalWait = waitNanos.sumThenReset();
+        long totalRun = runNanos.sumThenReset();
+        long maxWait = maxWaitNanos.getThenReset();
+        long maxRun = maxRunNanos.getThenReset();
+
+        StringBuilder builder = new StringBuilder(String.format("%s: %d chunks (%.1f/s), wait avg %.2f ms max %.2f ms",
+                name, count, count / seconds, average(totalWait, count), maxWait / 1e6));
+        if (maxRun > 0) {
+            builder.append(String.format(", run avg %.2f ms max %.2f ms", average(totalRun, count), maxRun / 1e6));
+        }
+        return builder.toString();
+    }
+
+    private static double average(long totalNanos, long count) {
+        return count == 0 ? 0 : totalNanos / 1e6 / count;
+    }
+}
@@ -4,21 +4,24 @@ import core.Camera;
 import core.Display;
 import core.Shader;
 import game.utils.BufferManager;
+import game.utils.FaceCulling;
+import game.utils.FaceDirection;
+import game.utils.GenerationEngine;
 import game.utils.TextureArray;
 import lombok.Setter;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector3i;
+import org.joml.Vector4i;
 import org.lwjgl.system.MemoryUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 import static org.lwjgl.glfw.GLFW.glfwGetTime;
 import static org.lwjgl.opengl.GL11C.GL_TRIANGLES;
@@ -41,11 +44,37 @@ public class World {
 
     private static TextureArray textureArray;
     private static final Map<Vector3i, Chunk> chunks = new ConcurrentHashMap<>();
-    private static final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    // Downsampled rings drawn around the full resolution chunks, each level doubling the cell size and the reach
+    private static final int LOD_LEVELS = Integer.getInteger("mineshit.lodLevels", 2);
+    private static final List<Map<Vector3i, Chunk>> lodRegions = new ArrayList<>(); // Regions by position, for the levels from 1
+    // Box drawn up to each level, min X, Y, Z inclusive then max X, Y, Z exclusive, in chunks. Null without levels of detail
+    private static volatile int[][] lodBoxes;
+    private static final Vector3i[] lodAnchors = new Vector3i[LOD_LEVELS + 1]; // Camera chunk each box is centered on
+    private static boolean lodRegionsPending; // Some regions to load are still being unloaded
+
+    static {
+        for (int level = 1; level <= LOD_LEVELS; level++) {
+            lodRegions.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    // Chunk pipeline: generate, wait for the neighbors, mesh, then upload on the render thread
+    private static final PipelineStage generationStage = new PipelineStage("generation",
+            Integer.getInteger("mineshit.generationThreads", 2), Integer.getInteger("mineshit.generationQueue", 256));
+    private static final PipelineStage meshStage = new PipelineStage("mesh",
+            Integer.getInteger("mineshit.meshThreads", 2), Integer.getInteger("mineshit.meshQueue", 256));
+    private static final StageMetrics neighborMetrics = new StageMetrics("neighbors");
+    private static final StageMetrics uploadMetrics = new StageMetrics("upload");
+    // Chunks and regions waiting for room in the generation queue: chunk position, then level of detail
+    private static final Set<Vector4i> generationBacklog = new LinkedHashSet<>();
+    // Chunks and regions above or deep under the terrain, filled with a single block instead of generated
+    private static final LongAdder uniformChunks = new LongAdder();
     private static final List<Chunk> chunkToCompile = new ArrayList<>();
 
     private static final Queue<Chunk> updateQueue = new ConcurrentLinkedQueue<>();
-    private static final int CHUNKS_PER_FRAME = 10; // Nombre de chunks à mettre à jour par frame
+    private static final Queue<Chunk> patchQueue = new ConcurrentLinkedQueue<>(); // Chunks with edited faces to upload in place
+    private static final int CHUNKS_PER_FRAME = Integer.getInteger("mineshit.uploadsPerFrame", 10); // Nombre de chunks à mettre à jour par frame
     private static boolean updateInProgress = false;
     private static Camera camera;
 
@@ -59,6 +88,9 @@ public class World {
 
     private static FloatBuffer chunkPositionBuffer;
     private static IntBuffer indirectBuffer;
+    // The indirect buffer holds one command per chunk for the shadow pass, then one per visible direction for the camera pass
+    private static int directionDrawCount;
+    private static final Vector3i cullingCenter = new Vector3i(Integer.MAX_VALUE); // Camera chunk the direction commands were built for
 
     private static final Vector3f lightDirection = new Vector3f(0.0f, -1.0f, 0.0f).normalize(); // Direction du soleil
     private static final Vector3f lightPosition = new Vector3f(50.0f, 16.0f, 0.0f);
@@ -69,6 +101,9 @@ public class World {
     @Setter
     private static boolean buffersNeedUpdate = true;
 
+    private static final long MEMORY_REPORT_INTERVAL = 30_000_000_000L; // Nanoseconds between two memory reports in the log
+    private static long lastMemoryReportTime = System.nanoTime();
+
     private static int lastRenderDistance = -1;
     private static Vector3i lastPosition = new Vector3i(Integer.MAX_VALUE);
     private static Vector3f cameraPosition;
@@ -104,7 +139,7 @@ public class World {
         glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, ssboId);
 
         vboBufferManager = new BufferManager(vaoId, GL_ARRAY_BUFFER, 100_000_000, (b) -> {
-            glVertexAttribIPointer(1, 1, GL_UNSIGNED_INT, 0, 0);
+            glVertexAttribIPointer(1, 2, GL_UNSIGNED_INT, 0, 0); // Face data, then ambient occlusion
             glEnableVertexAttribArray(1);
             glVertexAttribDivisor(1, 1);
         });
@@ -131,18 +166,45 @@ public class World {
         if (lastPosition.equals(center) && lastRenderDistance == renderDistance) {
             return;
         }
+        if (LOD_LEVELS > 0 && renderDistance != lastRenderDistance) {
+            Arrays.fill(lodAnchors, null);
+        }
         lastPosition = center;
         lastRenderDistance = renderDistance;
 
+        int[] loadBox;
+        if (LOD_LEVELS > 0) {
+            lodBoxes = computeLodBoxes(center, renderDistance);
+            // One more chunk around the full resolution box, so that the chunks on its border have all their neighbors
+            int[] box = lodBoxes[0];
+            loadBox = new int[]{box[0] - 1, box[1] - 1, box[2] - 1, box[3] + 1, box[4] + 1, box[5] + 1};
+        } else {
+            loadBox = new int[]{
+                    center.x - renderDistance, center.y - renderDistance, center.z - renderDistance,
+                    center.x + renderDistance + 1, center.y + renderDistance + 1, center.z + renderDistance + 1
+            };
+        }
+
+        // Whatever was not generated yet is queued again below if still in range
+        generationBacklog.clear();
+
         Set<Vector3i> newChunks = new HashSet<>();
         Set<Vector3i> existingChunks = new HashSet<>(chunks.keySet());
 
-        for (int y = -renderDistance; y <= renderDistance; y++) {
-            for (int x = -renderDistance; x <= renderDistance; x++) {
-                for (int z = -renderDistance; z <= renderDistance; z++) {
-                    Vector3i chunkPos = new Vector3i(center.x + x, center.y + y, center.z + z);
-                    if (!chunks.containsKey(chunkPos)) {
+        for (int y = loadBox[1]; y < loadBox[4]; y++) {
+            for (int x = loadBox[0]; x < loadBox[3]; x++) {
+                for (int z = loadBox[2]; z < loadBox[5]; z++) {
+                    Vector3i chunkPos = new Vector3i(x, y, z);
+                    Chunk chunk = chunks.get(chunkPos);
+                    if (chunk == null) {
                         newChunks.add(chunkPos);
+                    } else if (chunk.compareAndSetState(2, 0)) {
+                        // Back in range before its removal was processed. A mesh installed meanwhile was not
+                        // flagged for upload, see Chunk#markMeshed, so upload whatever the chunk holds
+                        if (chunk.isMeshed()) {
+                            chunk.compareAndSetState(0, 1);
+                        }
+                        buffersNeedUpdate = true;
                     }
                     existingChunks.remove(chunkPos);
                 }
@@ -150,28 +212,318 @@ public class World {
         }
 
         for (Vector3i chunkPos : existingChunks) {
-            executorService.execute(() -> {
-                Chunk c = chunks.get(chunkPos);
-                if (c != null) {
-                    c.setState(2);
-                    chunks.put(chunkPos, c);
+            Chunk c = chunks.get(chunkPos);
+            if (c != null) {
+                c.setState(2);
+                buffersNeedUpdate = true;
+            }
+        }
+
+        for (Vector3i chunkPos : newChunks) {
+            generationBacklog.add(new Vector4i(chunkPos, 0));
+        }
+
+        if (LOD_LEVELS > 0) {
+            updateLodRegions();
+        }
+        feedGenerationStage();
+    }
+
+    /**
+     * Moves chunks from the backlog to the generation queue while it has room.
+     */
+    private static void feedGenerationStage() {
+        Iterator<Vector4i> iterator = generationBacklog.iterator();
+        while (iterator.hasNext()) {
+            Vector4i key = iterator.next();
+            Vector3i position = new Vector3i(key.x, key.y, key.z);
+            int level = key.w;
+            if (!generationStage.trySubmit(level > 0 ? () -> loadLodRegion(position, level) : () -> loadChunk(position))) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    private static void loadChunk(Vector3i chunkPos) {
+        Chunk chunk = createChunk(chunkPos, 0);
+        // The same position can be queued twice when the camera goes back and forth
+        if (chunks.putIfAbsent(chunkPos, chunk) != null) {
+            chunk.free();
+            return;
+        }
+        scheduleMeshing(chunkPos);
+    }
+
+    /**
+     * Computes the box drawn up to each level of detail. Level 0 holds the full resolution chunks within the
+     * render distance, level L reaches {@code renderDistance << L} chunks and contains the box of level L - 1.
+     * Each box is aligned on the regions of the next level, so that a region is either wholly inside the
+     * previous box or wholly outside of it. A box follows the camera only once the camera is more than
+     * {@code 1 << L} chunks away from its center, so that regions do not switch back and forth between
+     * two levels while the camera moves around a boundary.
+     */
+    private static int[][] computeLodBoxes(Vector3i center, int renderDistance) {
+        int[][] boxes = new int[LOD_LEVELS + 1][];
+        for (int level = 0; level <= LOD_LEVELS; level++) {
+            Vector3i anchor = lodAnchors[level];
+            if (anchor == null || Math.max(Math.abs(anchor.x - center.x),
+                    Math.max(Math.abs(anchor.y - center.y), Math.abs(anchor.z - center.z))) > 1 << level) {
+                anchor = new Vector3i(center);
+                lodAnchors[level] = anchor;
+            }
+
+            int reach = renderDistance << level;
+            int[] box = {anchor.x - reach, anchor.y - reach, anchor.z - reach, anchor.x + reach + 1, anchor.y + reach + 1, anchor.z + reach + 1};
+            if (level > 0) {
+                for (int axis = 0; axis < 3; axis++) {
+                    box[axis] = Math.min(box[axis], boxes[level - 1][axis]);
+                    box[axis + 3] = Math.max(box[axis + 3], boxes[level - 1][axis + 3]);
+                }
+            }
+            int alignment = 2 << level;
+            for (int axis = 0; axis < 3; axis++) {
+                box[axis] = Math.floorDiv(box[axis], alignment) * alignment;
+                box[axis + 3] = -Math.floorDiv(-box[axis + 3], alignment) * alignment;
+            }
+            boxes[level] = box;
+        }
+        return boxes;
+    }
+
+    /**
+     * Loads the level of detail regions between each box and the previous one, and unloads the others.
+     * Regions to load that are still being unloaded are handled on a later frame, see {@link #render()}.
+     */
+    private static void updateLodRegions() {
+        int[][] boxes = lodBoxes;
+        lodRegionsPending = false;
+        for (int level = 1; level <= LOD_LEVELS; level++) {
+            Map<Vector3i, Chunk> regions = lodRegions.get(level - 1);
+            for (Chunk region : regions.values()) {
+                if (region.getState() != 2 && !isDrawn(boxes, region)) {
+                    region.setState(2);
                     buffersNeedUpdate = true;
                 }
-            });
+            }
+
+            int regionSize = 1 << level;
+            int[] box = boxes[level];
+            for (int y = box[1]; y < box[4]; y += regionSize) {
+                for (int x = box[0]; x < box[3]; x += regionSize) {
+                    for (int z = box[2]; z < box[5]; z += regionSize) {
+                        if (isInBox(boxes[level - 1], x, y, z)) continue;
+
+                        Vector3i regionPos = new Vector3i(x, y, z);
+                        Chunk region = regions.get(regionPos);
+                        if (region == null) {
+                            generationBacklog.add(new Vector4i(regionPos, level));
+                        } else if (region.getState() == 2) {
+                            lodRegionsPending = true;
+                        }
+                    }
+                }
+            }
         }
+    }
 
-        for (Vector3i chunkPos : newChunks) {
-            executorService.execute(() -> {
-                Chunk chunk = new Chunk(chunkPos);
-                chunk.setState(1);
-                chunks.put(chunkPos, chunk);
-                buffersNeedUpdate = true;
-            });
+    /**
+     * Generates a level of detail region and queues its mesh. Regions need no neighbors, their borders come from the generator.
+     */
+    private static void loadLodRegion(Vector3i regionPos, int level) {
+        Chunk region = createChunk(regionPos, level);
+        if (lodRegions.get(level - 1).putIfAbsent(regionPos, region) != null) {
+            region.free();
+            return;
+        }
+        // The boxes may have moved on since the region was queued
+        if (!isDrawn(lodBoxes, region)) {
+            region.setState(2);
+            buffersNeedUpdate = true;
+            return;
+        }
+
+        region.requestMesh();
+        Runnable meshTask = () -> {
+            region.generateMesh(null);
+            region.setStageStartTime(System.nanoTime());
+            region.markMeshed();
+            buffersNeedUpdate = true;
+        };
+
+        // Empty regions mesh to nothing whatever their borders, no need for a task
+        if (region.isUniform() && region.getUniformBlockId() == 0) {
+            meshTask.run();
+        } else {
+            meshStage.submit(meshTask);
+        }
+    }
+
+    /**
+     * Creates a chunk or level of detail region, skipping the generator when the height bounds of its columns
+     * show it is all air or all stone. Chunks with markers are always generated, see {@link Chunk#CHUNK_MARKERS}.
+     */
+    private static Chunk createChunk(Vector3i position, int level) {
+        short blockId = level == 0 && Chunk.CHUNK_MARKERS ? -1 : GenerationEngine.getUniformBlock(position, level);
+        if (blockId < 0) {
+            return new Chunk(position, level);
         }
+        uniformChunks.increment();
+        return new Chunk(position, level, blockId);
+    }
+
+    /**
+     * Checks whether a chunk or region belongs to the drawn part of its level: inside its box and outside of the previous one.
+     *
+     * @param boxes Boxes from {@link #computeLodBoxes}, or null without levels of detail, in which case everything is drawn.
+     */
+    private static boolean isDrawn(int[][] boxes, Chunk chunk) {
+        if (boxes == null) return true;
+        Vector3i position = chunk.getPosition();
+        int level = chunk.getLodLevel();
+        return isInBox(boxes[level], position.x, position.y, position.z)
+                && (level == 0 || !isInBox(boxes[level - 1], position.x, position.y, position.z));
+    }
+
+    private static boolean isInBox(int[] box, int x, int y, int z) {
+        return x >= box[0] && x < box[3] && y >= box[1] && y < box[4] && z >= box[2] && z < box[5];
+    }
+
+    /**
+     * Queues the mesh of a freshly generated chunk and of its neighbors, for each of them whose 26 neighbors are now loaded.
+     * Called by the generation workers, which wait when the mesh queue is full.
+     */
+    private static void scheduleMeshing(Vector3i chunkPos) {
+        tryScheduleMesh(chunkPos);
+        for (int i = 0; i < ChunkMesher.NEIGHBOR_COUNT; i++) {
+            tryScheduleMesh(new Vector3i(chunkPos).add(ChunkMesher.getNeighborOffset(i)));
+        }
+    }
+
+    private static void tryScheduleMesh(Vector3i chunkPos) {
+        Chunk chunk = chunks.get(chunkPos);
+        if (chunk == null || chunk.getState() == 2) {
+            return;
+        }
+
+        Chunk[] neighbors = getNeighbors(chunkPos);
+        if (neighbors == null || !chunk.requestMesh()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        neighborMetrics.record(now - chunk.getStageStartTime(), 0);
+        chunk.setStageStartTime(now);
+
+        Runnable meshTask = () -> {
+            // A stale mesh means the chunk was edited while meshing; retry on a fresh snapshot unless it was freed
+            while (!chunk.generateMesh(neighbors)) {
+                if (chunk.isFreed()) return;
+            }
+            chunk.setStageStartTime(System.nanoTime());
+            chunk.markMeshed();
+            buffersNeedUpdate = true;
+        };
+
+        // Empty and buried chunks get an empty mesh from their summaries alone, no need for a task
+        if (chunk.canSkipMesh(neighbors)) {
+            meshTask.run();
+        } else {
+            meshStage.submit(meshTask);
+        }
+    }
+
+    /**
+     * Sets a block from world coordinates and patches the meshes it shows in: the faces of the block and of the
+     * blocks around it, whose occlusion depends on it, in its chunk and in the face, edge and corner neighbors it borders. Patches that fit in
+     * the uploaded meshes are uploaded in place on the next frame, the others with a full upload.
+     *
+     * @return False if the chunk holding the block is not loaded.
+     */
+    public static boolean setBlock(int x, int y, int z, short blockId) {
+        Vector3i chunkPos = new Vector3i(Math.floorDiv(x, Chunk.SIZE), Math.floorDiv(y, Chunk.SIZE), Math.floorDiv(z, Chunk.SIZE));
+        Chunk chunk = chunks.get(chunkPos);
+        if (chunk == null || chunk.getState() == 2) {
+            return false;
+        }
+
+        int localX = Math.floorMod(x, Chunk.SIZE);
+        int localY = Math.floorMod(y, Chunk.SIZE);
+        int localZ = Math.floorMod(z, Chunk.SIZE);
+        chunk.setBlock(localX, localY, localZ, blockId);
+        patchMesh(chunkPos, localX, localY, localZ);
+
+        for (int i = 0; i < ChunkMesher.NEIGHBOR_COUNT; i++) {
+            // The neighbor sees the block one step outside of its own bounds
+            Vector3i offset = ChunkMesher.getNeighborOffset(i);
+            int neighborX = localX - offset.x * Chunk.SIZE;
+            int neighborY = localY - offset.y * Chunk.SIZE;
+            int neighborZ = localZ - offset.z * Chunk.SIZE;
+            if (neighborX >= -1 && neighborX <= Chunk.SIZE && neighborY >= -1 && neighborY <= Chunk.SIZE
+                    && neighborZ >= -1 && neighborZ <= Chunk.SIZE) {
+                patchMesh(offset.add(chunkPos), neighborX, neighborY, neighborZ);
+            }
+        }
+        return true;
+    }
+
+    private static void patchMesh(Vector3i chunkPos, int x, int y, int z) {
+        Chunk chunk = chunks.get(chunkPos);
+        if (chunk == null || chunk.getState() == 2) {
+            return;
+        }
+
+        Chunk[] neighbors = new Chunk[ChunkMesher.NEIGHBOR_COUNT];
+        for (int i = 0; i < neighbors.length; i++) {
+            neighbors[i] = chunks.get(ChunkMesher.getNeighborOffset(i).add(chunkPos));
+        }
+        if (chunk.patchMesh(x, y, z, neighbors)) {
+            patchQueue.add(chunk);
+        } else {
+            chunk.setState(3);
+            buffersNeedUpdate = true;
+        }
+    }
+
+    private static void uploadMeshPatches() {
+        Chunk chunk;
+        while ((chunk = patchQueue.poll()) != null) {
+            if (chunk.getState() == 0) {
+                chunk.uploadMeshPatch(vboBufferManager, chunk.getMeshId());
+            }
+        }
+    }
+
+    /**
+     * Gets the 26 neighbors of a chunk, laid out as described in {@link ChunkMesher#getNeighborOffset}.
+     *
+     * @return The neighbors, or null if any of them is not loaded yet.
+     */
+    private static Chunk[] getNeighbors(Vector3i chunkPos) {
+        Chunk[] neighbors = new Chunk[ChunkMesher.NEIGHBOR_COUNT];
+        for (int i = 0; i < neighbors.length; i++) {
+            Chunk neighbor = chunks.get(ChunkMesher.getNeighborOffset(i).add(chunkPos));
+            if (neighbor == null) {
+                return null;
+            }
+            neighbors[i] = neighbor;
+        }
+        return neighbors;
+    }
+
+    /**
+     * Gets the loaded chunks followed by the level of detail regions.
+     */
+    private static List<Chunk> getAllChunks() {
+        List<Chunk> allChunks = new ArrayList<>(chunks.values());
+        for (Map<Vector3i, Chunk> regions : lodRegions) {
+            allChunks.addAll(regions.values());
+        }
+        return allChunks;
     }
 
     public static void updateChunkDataBuffer() {
-        for (Chunk chunk : chunks.values()) {
+        for (Chunk chunk : getAllChunks()) {
             if (chunk.getState() == 2 || chunk.getState() == 1 || chunk.getState() == 3) {
                 updateQueue.add(chunk);
             }
@@ -185,23 +537,28 @@ public class World {
         while (!updateQueue.isEmpty() && chunksProcessed < CHUNKS_PER_FRAME) {
             Chunk chunk = updateQueue.poll();
             if (chunk != null) {
-                int chunkHash = chunk.getPosition().hashCode();
-                switch (chunk.getState()) {
+                int state = chunk.getState();
+                switch (state) {
                     case 2: // REMOVE
-                        chunks.remove(chunk.getPosition());
-                        vboBufferManager.removeData(chunkHash);
+                        if (chunk.getLodLevel() > 0) {
+                            lodRegions.get(chunk.getLodLevel() - 1).remove(chunk.getPosition(), chunk);
+                        } else {
+                            chunks.remove(chunk.getPosition(), chunk);
+                        }
+                        vboBufferManager.removeData(chunk.getMeshId());
+                        chunk.free();
                         break;
                     case 1: // ADD
-                        if (!chunk.getEncodedData().isEmpty()) {
-                            vboBufferManager.addData(chunkHash, toByteArray(chunk.getEncodedData()));
-                        }
+                        long startTime = System.nanoTime();
+                        chunk.uploadMesh(vboBufferManager, chunk.getMeshId());
+                        uploadMetrics.record(startTime - chunk.getStageStartTime(), System.nanoTime() - startTime);
                         break;
                     case 3: // DIRTY
-                        vboBufferManager.removeData(chunkHash);
-                        vboBufferManager.addData(chunkHash, toByteArray(chunk.getEncodedData()));
+                        chunk.uploadMesh(vboBufferManager, chunk.getMeshId());
                         break;
                 }
-                chunk.setState(0); // Reset state after processing
+                // Reset state after processing, unless a mesh worker flagged a new mesh meanwhile
+                chunk.compareAndSetState(state, 0);
                 chunksProcessed++;
             }
         }
@@ -217,23 +574,41 @@ public class World {
     public static void updateSmallBuffers() {
         chunkToCompile.clear();
 
+        Map<Integer, Chunk> meshes = new HashMap<>();
+        for (Chunk chunk : getAllChunks()) {
+            meshes.put(chunk.getMeshId(), chunk);
+        }
+        // Chunks outside of the drawn part of their level stay uploaded until unloaded, but another level covers them
+        int[][] boxes = lodBoxes;
         for (Map.Entry<Integer, Integer> entry : vboBufferManager.getOrderedOffsets()) {
-            chunks.values().stream().filter(_c -> _c.getPosition().hashCode() == entry.getKey()).findFirst().ifPresent(chunkToCompile::add);
+            Chunk chunk = meshes.get(entry.getKey());
+            if (chunk != null && isDrawn(boxes, chunk)) {
+                chunkToCompile.add(chunk);
+            }
         }
 
-        chunkPositionBuffer = MemoryUtil.memAllocFloat(chunkToCompile.size() * 4);
-        indirectBuffer = MemoryUtil.memAllocInt(4 * chunkToCompile.size());
+        int maxCommands = chunkToCompile.size() * (1 + FaceDirection.values().length);
+        chunkPositionBuffer = MemoryUtil.memAllocFloat(maxCommands * 4);
+        indirectBuffer = MemoryUtil.memAllocInt(maxCommands * 4);
 
+        // Shadows are cast towards the light, not the camera: the shadow pass draws whole chunks
         for (Chunk chunk : chunkToCompile) {
-            chunkPositionBuffer.put(chunk.getPosition().x);
-            chunkPositionBuffer.put(chunk.getPosition().y);
-            chunkPositionBuffer.put(chunk.getPosition().z);
-            chunkPositionBuffer.put(0.0f);
+            putDrawCommand(chunk, vboBufferManager.getIdSize(chunk.getMeshId()) / Long.BYTES, vboBufferManager.getIdOffset(chunk.getMeshId()) / Long.BYTES);
+        }
 
-            indirectBuffer.put(6); // Primitive count
-            indirectBuffer.put(vboBufferManager.getIdSize(chunk.getPosition().hashCode()) / Integer.BYTES); // Instance count
-            indirectBuffer.put(0); // First index
-            indirectBuffer.put(vboBufferManager.getIdOffset(chunk.getPosition().hashCode()) / Integer.BYTES); // Base instance
+        // The camera pass only draws the direction ranges that can face the camera
+        cullingCenter.set(lastPosition);
+        directionDrawCount = 0;
+        for (Chunk chunk : chunkToCompile) {
+            int baseInstance = vboBufferManager.getIdOffset(chunk.getMeshId()) / Long.BYTES;
+            int visibleFaces = FaceCulling.getVisibleFaces(chunk.getPosition(), chunk.getCellSize(), cullingCenter);
+            for (FaceDirection face : FaceDirection.values()) {
+                int instanceCount = chunk.getUploadedDirectionSize(face);
+                if ((visibleFaces & (1 << face.ordinal())) != 0 && instanceCount > 0) {
+                    putDrawCommand(chunk, instanceCount, baseInstance + chunk.getUploadedDirectionStart(face));
+                    directionDrawCount++;
+                }
+            }
         }
 
         chunkPositionBuffer.flip();
@@ -252,6 +627,18 @@ public class World {
         glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
     }
 
+    private static void putDrawCommand(Chunk chunk, int instanceCount, int baseInstance) {
+        chunkPositionBuffer.put(chunk.getPosition().x);
+        chunkPositionBuffer.put(chunk.getPosition().y);
+        chunkPositionBuffer.put(chunk.getPosition().z);
+        chunkPositionBuffer.put(chunk.getCellSize()); // Scale of the cells, a region spans as many chunks per axis
+
+        indirectBuffer.put(6); // Primitive count
+        indirectBuffer.put(instanceCount); // Instance count
+        indirectBuffer.put(0); // First index
+        indirectBuffer.put(baseInstance); // Base instance
+    }
+
     private static void updateLightMatrices() {
         // La lumière regarde le centre de la scène depuis sa position
         lightView.identity().lookAt(lightPosition, new Vector3f(0, 0, 0), new Vector3f(0, 0, -1)); // Utilisez (0, 0, -1) si Y est "up".
@@ -294,30 +681,78 @@ public class World {
         shadowMap.bindTexture(1);
 
         textureArray.bind();
+        feedGenerationStage();
         if (buffersNeedUpdate) {
             updateChunkDataBuffer();
             buffersNeedUpdate = false;
         }
         if (updateInProgress) {
             processChunkUpdates();
+        } else if (lodRegionsPending) {
+            updateLodRegions();
+        } else if (!cullingCenter.equals(lastPosition)) {
+            updateSmallBuffers();
         }
+        uploadMeshPatches();
 
+        Display.shader.setUniform("uDrawOffset", chunkToCompile.size());
         glBindVertexArray(vaoId);
         glBindBuffer(GL_DRAW_INDIRECT_BUFFER, indirectBufferId);
-        glMultiDrawArraysIndirect(GL_TRIANGLES, 0, chunkToCompile.size(), 16);
+        glMultiDrawArraysIndirect(GL_TRIANGLES, (long) chunkToCompile.size() * 16, directionDrawCount, 16);
         textureArray.unbind();
+
+        if (System.nanoTime() - lastMemoryReportTime >= MEMORY_REPORT_INTERVAL) {
+            lastMemoryReportTime = System.nanoTime();
+            LOGGER.info("World memory report:\n{}", getMemoryReport());
+            LOGGER.info("Chunk pipeline report:\n{}", getPipelineReport());
+        }
     }
 
-    private static byte[] toByteArray(List<Integer> list) {
-        ByteBuffer buffer = ByteBuffer.allocate(list.size() * Integer.BYTES).order(ByteOrder.nativeOrder());
-        for (int value : list) {
-            buffer.putInt(value);
+    /**
+     * Builds an estimate of the heap held by the loaded chunks, their meshes and the pending queues.
+     */
+    public static MemoryReport getMemoryReport() {
+        MemoryReport report = new MemoryReport();
+        for (Chunk chunk : getAllChunks()) {
+            chunk.collectMemory(report);
         }
-        return buffer.array();
+        report.setPending(updateQueue.size(), generationBacklog.size() + generationStage.getQueueSize() + meshStage.getQueueSize());
+        report.setOffHeap(ChunkSection.ALLOCATOR.getUsedBytes(), ChunkSection.ALLOCATOR.getReservedBytes());
+        report.setPool(Chunk.POOL.getHits(), Chunk.POOL.getMisses(), Chunk.POOL.estimateRetainedBytes());
+        report.setMeshCache(ChunkMesher.CACHE.getEntryCount(), ChunkMesher.CACHE.getUsedBytes());
+        return report;
+    }
+
+    /**
+     * Formats the metrics of each pipeline stage since the previous report, see {@link StageMetrics#report()}.
+     */
+    public static String getPipelineReport() {
+        return generationStage.report() + ", " + uniformChunks.sumThenReset() + " uniform, " + generationBacklog.size() + " in backlog, "
+                + GenerationEngine.getNoiseCacheReport() + "\n"
+                + neighborMetrics.report() + "\n"
+                + meshStage.report() + ", " + ChunkMesher.getFastPathReport() + ", " + ChunkMesher.CACHE.report() + "\n"
+                + uploadMetrics.report() + ", " + updateQueue.size() + " queued";
     }
 
     public static void shutdown() {
-        executorService.shutdown();
+        // Generation first, its workers feed the mesh stage
+        generationBacklog.clear();
+        boolean generationStopped = generationStage.shutdown(5, TimeUnit.SECONDS);
+        boolean meshStopped = meshStage.shutdown(5, TimeUnit.SECONDS);
+        if (!generationStopped || !meshStopped) {
+            // Workers may still read chunk data through their snapshots, leave it to the process exit
+            LOGGER.warn("Pipeline workers still running at shutdown, chunk memory is not released");
+            return;
+        }
+
+        for (Chunk chunk : getAllChunks()) {
+            chunk.free();
+        }
+        chunks.clear();
+        lodRegions.forEach(Map::clear);
+        ChunkSection.ALLOCATOR.reportLeaks();
+        ChunkSection.ALLOCATOR.release();
+        Chunk.POOL.release();
     }
 }
 
@@ -0,0 +1,196 @@
+package game.utils;
+
+import game.MemoryReport;
+
+import java.util.Arrays;
+
+/**
+ * Primitive block palette mapping palette indices to block ids and back.
+ * The reverse lookup is a small open-addressed table, so id -> index is O(1) without boxing.
+ * Each entry keeps a reference count of the blocks using it, so unused entries can be compacted away.
+ */
+public class BlockPalette {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private short[] ids;   // Index -> Block id
+    private int[] counts;  // Index -> Number of blocks using the entry
+    private int[] slots;   // Hash slot -> Index + 1 (0 = empty)
+    private int size;
+    private int liveSize;
+
+    public BlockPalette() {
+        this.ids = new short[INITIAL_CAPACITY];
+        this.counts = new int[INITIAL_CAPACITY];
+        this.slots = new int[INITIAL_CAPACITY * 2];
+        this.size = 0;
+    }
+
+    /**
+     * Gets the block id stored at a palette index.
+     *
+     * @param index Palette index.
+     * @return The block id.
+     */
+    public short get(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Looks up the palette index of a block id.
+     *
+     * @param blockId Block id to look up.
+     * @return The palette index, or -1 if the id is not in the palette.
+     */
+    public int indexOf(short blockId) {
+        int mask = slots.length - 1;
+        int slot = hash(blockId) & mask;
+        int entry;
+        while ((entry = slots[slot]) != 0) {
+            if (ids[entry - 1] == blockId) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a block id to the palette. The id must not already be present.
+     *
+     * @param blockId Block id to add.
+     * @return The palette index of the new entry.
+     */
+    public int add(short blockId) {
+        if (size == ids.length) {
+            grow();
+        }
+        int index = size++;
+        ids[index] = blockId;
+        counts[index] = 0;
+        insertSlot(blockId, index);
+        return index;
+    }
+
+    /**
+     * Gets the palette index of a block id, adding it if missing.
+     *
+     * @param blockId Block id to look up.
+     * @return The palette index.
+     */
+    public int getOrAdd(short blockId) {
+        int index = indexOf(blockId);
+        return index != -1 ? index : add(blockId);
+    }
+
+    /**
+     * Adds references to a palette entry.
+     *
+     * @param index Palette index.
+     * @param count Number of blocks now using the entry.
+     */
+    public void retain(int index, int count) {
+        if (counts[index] == 0 && count > 0) {
+            liveSize++;
+        }
+        counts[index] += count;
+    }
+
+    /**
+     * Removes references from a palette entry.
+     *
+     * @param index Palette index.
+     * @param count Number of blocks no longer using the entry.
+     */
+    public void release(int index, int count) {
+        counts[index] -= count;
+        if (counts[index] == 0 && count > 0) {
+            liveSize--;
+        }
+    }
+
+    public int getCount(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Gets the number of entries that are referenced by at least one block.
+     */
+    public int liveSize() {
+        return liveSize;
+    }
+
+    public boolean contains(short blockId) {
+        return indexOf(blockId) != -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long estimateRetainedBytes() {
+        return MemoryReport.objectBytes(3 * MemoryReport.REFERENCE_BYTES + 2 * Integer.BYTES)
+                + MemoryReport.arrayBytes(ids.length, Short.BYTES)
+                + MemoryReport.arrayBytes(counts.length, Integer.BYTES)
+                + MemoryReport.arrayBytes(slots.length, Integer.BYTES);
+    }
+
+    /**
+     * Replaces the content of this palette with the entries and reference counts of another one.
+     *
+     * @param other Palette to copy.
+     * @return This palette.
+     */
+    public BlockPalette copyFrom(BlockPalette other) {
+        if (ids.length < other.ids.length) {
+            ids = new short[other.ids.length];
+            counts = new int[other.counts.length];
+        }
+        // The slot table stays twice the size of the ids, whose capacity may be larger than the other's
+        if (slots.length != ids.length * 2) {
+            slots = new int[ids.length * 2];
+        }
+        System.arraycopy(other.ids, 0, ids, 0, other.size);
+        System.arraycopy(other.counts, 0, counts, 0, other.size);
+        size = other.size;
+        liveSize = other.liveSize;
+        if (slots.length == other.slots.length) {
+            System.arraycopy(other.slots, 0, slots, 0, slots.length);
+        } else {
+            Arrays.fill(slots, 0);
+            for (int i = 0; i < size; i++) {
+                insertSlot(ids[i], i);
+            }
+        }
+        return this;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+        liveSize = 0;
+    }
+
+    private void grow() {
+        ids = Arrays.copyOf(ids, ids.length * 2);
+        counts = Arrays.copyOf(counts, counts.length * 2);
+        slots = new int[ids.length * 2];
+        for (int i = 0; i < size; i++) {
+            insertSlot(ids[i], i);
+        }
+    }
+
+    private void insertSlot(short blockId, int index) {
+        int mask = slots.length - 1;
+        int slot = hash(blockId) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = index + 1;
+    }
+
+    private static int hash(short blockId) {
+        int h = blockId * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+}
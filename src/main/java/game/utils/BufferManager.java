@@ -80,17 +80,26 @@ public class BufferManager {
      * @throws RuntimeException If the buffer does not have enough space.
      */
     public synchronized void addData(int id, byte[] data) {
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(data.length);
+        byteBuffer.put(data).flip();
+        addData(id, byteBuffer);
+    }
 
-        int size = data.length;
+    /**
+     * Allocates space in the buffer and uploads the data straight from native memory, without any copy on the heap.
+     *
+     * @param id   ID for tracking this allocation.
+     * @param data Direct buffer holding the data between its position and its limit. Left unchanged.
+     */
+    public synchronized void addData(int id, ByteBuffer data) {
+        int size = data.remaining();
         int offset = allocate(size);
         idToOffset.put(id, offset);
         idToSize.put(id, size);
-        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(data.length);
-        byteBuffer.put(data).flip();
 
         // Upload data to the OpenGL buffer
         glBindBuffer(BUFFER_TYPE, bufferId);
-        glBufferSubData(BUFFER_TYPE, offset, byteBuffer);
+        glBufferSubData(BUFFER_TYPE, offset, data);
         glBindBuffer(BUFFER_TYPE, 0);
     }
 
@@ -103,19 +112,58 @@ public class BufferManager {
      * @throws RuntimeException         If the new data size exceeds the allocated size.
      */
     public synchronized void updateData(int id, byte[] data) {
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(data.length);
+        byteBuffer.put(data).flip();
+        updateData(id, byteBuffer);
+    }
+
+    /**
+     * Updates data at the existing allocation straight from native memory.
+     *
+     * @param id   ID of the existing allocation.
+     * @param data Direct buffer holding the new data between its position and its limit. Left unchanged.
+     * @throws IllegalArgumentException If the ID does not exist.
+     * @throws RuntimeException         If the new data size exceeds the allocated size.
+     */
+    public synchronized void updateData(int id, ByteBuffer data) {
         Integer offset = idToOffset.get(id);
         Integer allocatedSize = idToSize.get(id);
 
         if (offset == null || allocatedSize == null) {
             throw new IllegalArgumentException("ID not found: " + id);
         }
-        if (data.length > allocatedSize) {
+        if (data.remaining() > allocatedSize) {
             throw new RuntimeException("New data size exceeds allocated size.");
         }
 
         // Upload the new data
         glBindBuffer(BUFFER_TYPE, bufferId);
-        glBufferSubData(BUFFER_TYPE, offset, ByteBuffer.wrap(data).flip());
+        glBufferSubData(BUFFER_TYPE, offset, data);
+        glBindBuffer(BUFFER_TYPE, 0);
+    }
+
+    /**
+     * Updates part of an existing allocation straight from native memory, leaving the rest of it untouched.
+     *
+     * @param id         ID of the existing allocation.
+     * @param byteOffset Offset of the update from the start of the allocation, in bytes.
+     * @param data       Direct buffer holding the new data between its position and its limit. Left unchanged.
+     * @throws IllegalArgumentException If the ID does not exist.
+     * @throws RuntimeException         If the update goes past the end of the allocation.
+     */
+    public synchronized void updateData(int id, int byteOffset, ByteBuffer data) {
+        Integer offset = idToOffset.get(id);
+        Integer allocatedSize = idToSize.get(id);
+
+        if (offset == null || allocatedSize == null) {
+            throw new IllegalArgumentException("ID not found: " + id);
+        }
+        if (byteOffset < 0 || byteOffset + data.remaining() > allocatedSize) {
+            throw new RuntimeException("Update range exceeds allocated size.");
+        }
+
+        glBindBuffer(BUFFER_TYPE, bufferId);
+        glBufferSubData(BUFFER_TYPE, offset + byteOffset, data);
         glBindBuffer(BUFFER_TYPE, 0);
     }
 
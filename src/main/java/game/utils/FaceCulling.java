@@ -0,0 +1,56 @@
+package game.utils;
+
+import org.joml.Vector3i;
+
+/**
+ * Chunk-level backface culling. A face can only be seen from the side its direction points to, so when the
+ * camera is wholly on one side of a chunk, the faces of that chunk pointing away from the camera are never visible.
+ */
+public final class FaceCulling {
+
+    private FaceCulling() {
+    }
+
+    /**
+     * Gets the face directions of a chunk that can face a camera. Positions are compared on the chunk grid:
+     * the faces of a direction are dropped only when the camera chunk is strictly behind the chunk along
+     * that direction. This holds anywhere inside the camera chunk, so the result only changes when the
+     * camera enters another chunk.
+     *
+     * @param chunkPosition Chunk grid position.
+     * @param cameraChunk   Chunk grid position of the camera.
+     * @return Bit mask with bit {@link FaceDirection#ordinal()} set for each direction to draw.
+     */
+    public static int getVisibleFaces(Vector3i chunkPosition, Vector3i cameraChunk) {
+        return getVisibleFaces(chunkPosition, 1, cameraChunk);
+    }
+
+    /**
+     * Same as {@link #getVisibleFaces(Vector3i, Vector3i)} for a region spanning several chunks along each axis,
+     * such as a level of detail region. The faces of a direction are dropped only when the camera chunk is
+     * strictly behind the whole region: behind its first chunk for the positive directions, behind its last
+     * chunk for the negative ones.
+     *
+     * @param regionPosition Chunk grid position of the region's first chunk.
+     * @param regionSize     Number of chunks spanned along each axis.
+     * @param cameraChunk    Chunk grid position of the camera.
+     * @return Bit mask with bit {@link FaceDirection#ordinal()} set for each direction to draw.
+     */
+    public static int getVisibleFaces(Vector3i regionPosition, int regionSize, Vector3i cameraChunk) {
+        int visibleFaces = 0;
+        for (FaceDirection face : FaceDirection.values()) {
+            long delta = getDelta(regionPosition.x, regionSize, cameraChunk.x, face.getOffsetX())
+                    + getDelta(regionPosition.y, regionSize, cameraChunk.y, face.getOffsetY())
+                    + getDelta(regionPosition.z, regionSize, cameraChunk.z, face.getOffsetZ());
+            if (delta >= 0) {
+                visibleFaces |= 1 << face.ordinal();
+            }
+        }
+        return visibleFaces;
+    }
+
+    private static long getDelta(int regionPosition, int regionSize, int cameraChunk, int offset) {
+        long nearest = offset > 0 ? regionPosition : (long) regionPosition + regionSize - 1;
+        return ((long) cameraChunk - nearest) * offset;
+    }
+}
@@ -1,8 +1,11 @@
 package game.utils;
 
 import game.Chunk;
+import game.ChunkMesher;
 import org.joml.Vector3i;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 public class GenerationEngine {
 
     private static final long SEED = 154555112;
@@ -10,91 +13,243 @@ public class GenerationEngine {
     private static final int BASE_HEIGHT = 10;
     private static final int SAMPLE_INTERVAL = 8;
     private static final float THRESHOLD = 0.1f;
+    // Position of local block 0 in the sample grid, kept from the former chunk border so the terrain is unchanged
+    private static final int SAMPLE_OFFSET = 1;
     private static final PerlinCache perlinCache = new PerlinCache(SEED,1024*16);
+    // Heights of the chunk columns, shared by the chunks of each vertical stack
+    private static final HeightmapCache heightmaps = new HeightmapCache(
+            Integer.getInteger("mineshit.heightmapCacheSize", 1024), GenerationEngine::generateHeightmap);
+    // Heights at the cell centers of the level of detail regions, one cache per level
+    private static final ConcurrentHashMap<Integer, HeightmapCache> lodHeightmaps = new ConcurrentHashMap<>();
+    private static final ThreadLocal<short[]> BLOCK_BUFFER = ThreadLocal.withInitial(() -> new short[Chunk.TOTAL_BLOCKS]);
+    private static final ThreadLocal<short[]> PLANE_BUFFER = ThreadLocal.withInitial(() -> new short[ChunkMesher.BORDER_LENGTH]);
 
     public static void generateChunkData(Chunk chunk) {
-        float[][][] noiseSamples = new float[Chunk.SIZE / SAMPLE_INTERVAL + 3]
-                [Chunk.SIZE / SAMPLE_INTERVAL + 3]
-                [Chunk.SIZE / SAMPLE_INTERVAL + 3];
-
-        for (int x = 0; x < noiseSamples.length; x++) {
-            for (int z = 0; z < noiseSamples.length; z++) {
-                for (int y = 0; y < noiseSamples.length; y++) {
-                    int globalX = (chunk.getPosition().x * Chunk.SIZE) + (x - 1) * SAMPLE_INTERVAL;
-                    int globalZ = (chunk.getPosition().z * Chunk.SIZE) + (z - 1) * SAMPLE_INTERVAL;
-
-                    float terrainNoise = perlinCache.getNoise(globalX, globalZ) * AMPLITUDE;
-                    noiseSamples[x][y][z] = terrainNoise;
+        int[] heights = heightmaps.getHeights(chunk.getPosition().x, chunk.getPosition().z);
+        short[] blocks = BLOCK_BUFFER.get();
+        int chunkBaseY = chunk.getPosition().y * Chunk.SIZE;
+
+        for (int x = 0; x < Chunk.SIZE; x++) {
+            for (int z = 0; z < Chunk.SIZE; z++) {
+                int terrainHeight = heights[HeightmapCache.getIndex(x, z)];
+                for (int y = 0; y < Chunk.SIZE; y++) {
+                    blocks[Chunk.getBlockIndex(x, y, z)] = getBlock(chunkBaseY + y, 1, terrainHeight);
                 }
             }
         }
 
-        for (int x = -Chunk.BORDER; x < Chunk.SIZE + Chunk.BORDER; x++) {
-            for (int y = -Chunk.BORDER; y < Chunk.SIZE + Chunk.BORDER; y++) {
-                for (int z = -Chunk.BORDER; z < Chunk.SIZE + Chunk.BORDER; z++) {
-                    int globalX = (chunk.getPosition().x * Chunk.SIZE) + x;
-                    int globalY = (chunk.getPosition().y * Chunk.SIZE) + y;
-                    int globalZ = (chunk.getPosition().z * Chunk.SIZE) + z;
-
-                    int x0 = (x + Chunk.BORDER) / SAMPLE_INTERVAL;
-                    int x1 = x0 + 1;
-                    int y0 = (y + Chunk.BORDER) / SAMPLE_INTERVAL;
-                    int y1 = y0 + 1;
-                    int z0 = (z + Chunk.BORDER) / SAMPLE_INTERVAL;
-                    int z1 = z0 + 1;
-
-                    float dx = ((x + Chunk.BORDER) % SAMPLE_INTERVAL) / (float) SAMPLE_INTERVAL;
-                    float dy = ((y + Chunk.BORDER) % SAMPLE_INTERVAL) / (float) SAMPLE_INTERVAL;
-                    float dz = ((z + Chunk.BORDER) % SAMPLE_INTERVAL) / (float) SAMPLE_INTERVAL;
-
-                    float interpolatedNoise = trilinearInterpolate(
-                            noiseSamples, x0, x1, y0, y1, z0, z1, dx, dy, dz);
-
-                    int terrainHeight = (int) (BASE_HEIGHT + interpolatedNoise);
-
-                    if (globalY < terrainHeight) {
-                        short blockId;
-
-                        if(false){
-                            blockId = (short) BlockType.TEST.ordinal();
-                        } else if (globalY == terrainHeight - 1) {
-                            blockId = (short) BlockType.GRASS.ordinal(); // Surface block
-                        } else if (globalY > terrainHeight - 8) {
-                            blockId = (short) BlockType.DIRT.ordinal(); // Subsurface block
-                        } else {
-                            blockId = (short) BlockType.STONE.ordinal(); // Deep block
-                        }
-                        chunk.setBlock(x, y, z, blockId);
-                    } else {
-                        chunk.setBlock(x, y, z, (short) BlockType.AIR.ordinal()); // Air block
-                    }
-                }
+        chunk.setBlocks(blocks);
+    }
+
+    /**
+     * Generates the heightmap of a chunk column, border included. The noise samples covering the column are
+     * read once, then each block column is interpolated from them as in {@link #getTerrainHeight}.
+     */
+    public static void generateHeightmap(int columnX, int columnZ, int[] heights) {
+        int baseX = columnX * Chunk.SIZE;
+        int baseZ = columnZ * Chunk.SIZE;
+        int firstSampleX = getSampleOrigin(baseX - 1);
+        int firstSampleZ = getSampleOrigin(baseZ - 1);
+        int sampleCount = (getSampleOrigin(baseX + Chunk.SIZE) - firstSampleX) / SAMPLE_INTERVAL + 2;
+
+        float[] samples = new float[sampleCount * sampleCount];
+        for (int j = 0; j < sampleCount; j++) {
+            for (int i = 0; i < sampleCount; i++) {
+                samples[i + j * sampleCount] = perlinCache.getNoise(
+                        firstSampleX + i * SAMPLE_INTERVAL, firstSampleZ + j * SAMPLE_INTERVAL) * AMPLITUDE;
+            }
+        }
+
+        for (int z = -1; z <= Chunk.SIZE; z++) {
+            int j = (getSampleOrigin(baseZ + z) - firstSampleZ) / SAMPLE_INTERVAL;
+            float dz = Math.floorMod(baseZ + z + SAMPLE_OFFSET, SAMPLE_INTERVAL) / (float) SAMPLE_INTERVAL;
+            for (int x = -1; x <= Chunk.SIZE; x++) {
+                int i = (getSampleOrigin(baseX + x) - firstSampleX) / SAMPLE_INTERVAL;
+                float dx = Math.floorMod(baseX + x + SAMPLE_OFFSET, SAMPLE_INTERVAL) / (float) SAMPLE_INTERVAL;
+
+                float c0 = samples[i + j * sampleCount] * (1 - dz) + samples[i + (j + 1) * sampleCount] * dz;
+                float c1 = samples[i + 1 + j * sampleCount] * (1 - dz) + samples[i + 1 + (j + 1) * sampleCount] * dz;
+                heights[HeightmapCache.getIndex(x, z)] = (int) (BASE_HEIGHT + (c0 * (1 - dx) + c1 * dx));
             }
         }
     }
 
+    /**
+     * Gets the world coordinate of the noise sample below a block coordinate, the lower one to interpolate from.
+     */
+    private static int getSampleOrigin(int global) {
+        return Math.floorDiv(global + SAMPLE_OFFSET, SAMPLE_INTERVAL) * SAMPLE_INTERVAL - SAMPLE_INTERVAL;
+    }
 
-    private static float trilinearInterpolate(
-            float[][][] samples, int x0, int x1, int y0, int y1, int z0, int z1,
-            float dx, float dy, float dz) {
+    /**
+     * Gets the terrain height of a column, the Y of its first air block. Same interpolation as
+     * {@link #generateChunkData}, done on world coordinates.
+     *
+     * @param globalX World X of the column.
+     * @param globalZ World Z of the column.
+     */
+    public static int getTerrainHeight(int globalX, int globalZ) {
+        int sampleX = getSampleOrigin(globalX);
+        int sampleZ = getSampleOrigin(globalZ);
+        float dx = Math.floorMod(globalX + SAMPLE_OFFSET, SAMPLE_INTERVAL) / (float) SAMPLE_INTERVAL;
+        float dz = Math.floorMod(globalZ + SAMPLE_OFFSET, SAMPLE_INTERVAL) / (float) SAMPLE_INTERVAL;
+
+        float c00 = perlinCache.getNoise(sampleX, sampleZ) * AMPLITUDE;
+        float c01 = perlinCache.getNoise(sampleX, sampleZ + SAMPLE_INTERVAL) * AMPLITUDE;
+        float c10 = perlinCache.getNoise(sampleX + SAMPLE_INTERVAL, sampleZ) * AMPLITUDE;
+        float c11 = perlinCache.getNoise(sampleX + SAMPLE_INTERVAL, sampleZ + SAMPLE_INTERVAL) * AMPLITUDE;
+
+        float c0 = c00 * (1 - dz) + c01 * dz;
+        float c1 = c10 * (1 - dz) + c11 * dz;
+        return (int) (BASE_HEIGHT + (c0 * (1 - dx) + c1 * dx));
+    }
 
-        float c000 = samples[x0][y0][z0];
-        float c001 = samples[x0][y0][z1];
-        float c010 = samples[x0][y1][z0];
-        float c011 = samples[x0][y1][z1];
-        float c100 = samples[x1][y0][z0];
-        float c101 = samples[x1][y0][z1];
-        float c110 = samples[x1][y1][z0];
-        float c111 = samples[x1][y1][z1];
+    /**
+     * Formats the noise cache statistics since the previous report, see {@link PerlinCache#report()}.
+     */
+    public static String getNoiseCacheReport() {
+        return perlinCache.report();
+    }
 
-        float c00 = c000 * (1 - dz) + c001 * dz;
-        float c01 = c010 * (1 - dz) + c011 * dz;
-        float c10 = c100 * (1 - dz) + c101 * dz;
-        float c11 = c110 * (1 - dz) + c111 * dz;
+    /**
+     * Gets bounds of the terrain height over a square of chunk columns without generating it. Heights are
+     * interpolated between noise samples, so none is lower than the lowest sample around the square or higher
+     * than the highest one. The bounds are widened by a block for the rounding of the interpolation.
+     *
+     * @param columnX Chunk grid X of the first column.
+     * @param columnZ Chunk grid Z of the first column.
+     * @param columns Number of columns per side of the square.
+     * @return Lowest then highest terrain height, both inclusive.
+     */
+    public static int[] getHeightBounds(int columnX, int columnZ, int columns) {
+        int minX = columnX * Chunk.SIZE;
+        int minZ = columnZ * Chunk.SIZE;
+        int lastSampleX = getSampleOrigin(minX + columns * Chunk.SIZE - 1) + SAMPLE_INTERVAL;
+        int lastSampleZ = getSampleOrigin(minZ + columns * Chunk.SIZE - 1) + SAMPLE_INTERVAL;
+
+        float lowest = Float.MAX_VALUE;
+        float highest = -Float.MAX_VALUE;
+        for (int sampleZ = getSampleOrigin(minZ); sampleZ <= lastSampleZ; sampleZ += SAMPLE_INTERVAL) {
+            for (int sampleX = getSampleOrigin(minX); sampleX <= lastSampleX; sampleX += SAMPLE_INTERVAL) {
+                float sample = perlinCache.getNoise(sampleX, sampleZ) * AMPLITUDE;
+                lowest = Math.min(lowest, sample);
+                highest = Math.max(highest, sample);
+            }
+        }
+        return new int[]{(int) Math.floor(BASE_HEIGHT + lowest) - 1, (int) Math.ceil(BASE_HEIGHT + highest) + 1};
+    }
 
-        float c0 = c00 * (1 - dy) + c01 * dy;
-        float c1 = c10 * (1 - dy) + c11 * dy;
+    /**
+     * Gets the block filling a whole chunk or level of detail region, when the height bounds of its columns
+     * show that every cell of it is air or stone, see {@link #getHeightBounds} and {@link #getBlock}.
+     *
+     * @param position Chunk grid position of the chunk or region.
+     * @param lodLevel Level of detail, 0 for a chunk.
+     * @return The block id, or -1 if the chunk may hold the terrain surface.
+     */
+    public static short getUniformBlock(Vector3i position, int lodLevel) {
+        int cellSize = 1 << lodLevel;
+        int[] bounds = getHeightBounds(position.x, position.z, cellSize);
+        int baseY = position.y * Chunk.SIZE;
+        int lowestCenterY = baseY + cellSize / 2;
+        int highestCenterY = baseY + (Chunk.SIZE - 1) * cellSize + cellSize / 2;
+
+        if (lowestCenterY >= bounds[1]) {
+            return (short) BlockType.AIR.ordinal();
+        }
+        // Neither grass nor dirt: at least a cell and 7 blocks under the lowest surface
+        if (highestCenterY + Math.max(cellSize, 7) < bounds[0]) {
+            return (short) BlockType.STONE.ordinal();
+        }
+        return -1;
+    }
 
-        return c0 * (1 - dx) + c1 * dx;
+    /**
+     * Generates a level of detail region: every block of the chunk grid stands for a cell of
+     * {@code 1 << chunk.getLodLevel()} blocks per side, filled after the terrain at the center of the cell.
+     * The region position is in chunk units, so the region starts at block {@code position * Chunk.SIZE}.
+     */
+    public static void generateLodData(Chunk chunk) {
+        int cellSize = 1 << chunk.getLodLevel();
+        int[] heights = getLodHeights(chunk);
+        short[] blocks = BLOCK_BUFFER.get();
+        int baseY = chunk.getPosition().y * Chunk.SIZE;
+
+        for (int x = 0; x < Chunk.SIZE; x++) {
+            for (int z = 0; z < Chunk.SIZE; z++) {
+                int terrainHeight = heights[HeightmapCache.getIndex(x, z)];
+                for (int y = 0; y < Chunk.SIZE; y++) {
+                    blocks[Chunk.getBlockIndex(x, y, z)] = getBlock(baseY + y * cellSize, cellSize, terrainHeight);
+                }
+            }
+        }
+
+        chunk.setBlocks(blocks);
+    }
+
+    /**
+     * Generates the cells bordering a level of detail region, so that the region can be meshed without
+     * its neighbors. Cells are laid out as the mesher's border cells, see {@link ChunkMesher#getBorderIndex}.
+     *
+     * @return Border cells in a thread local buffer, valid until the next call on the same thread.
+     */
+    public static short[] generateLodPlanes(Chunk chunk) {
+        int cellSize = 1 << chunk.getLodLevel();
+        int[] heights = getLodHeights(chunk);
+        short[] planes = PLANE_BUFFER.get();
+        int baseY = chunk.getPosition().y * Chunk.SIZE;
+
+        // Cell coordinates of the bordering cells, from -1 to Chunk.SIZE
+        for (int y = -1; y <= Chunk.SIZE; y++) {
+            for (int z = -1; z <= Chunk.SIZE; z++) {
+                // Rows crossing the region only border it at both ends
+                boolean outside = y < 0 || y >= Chunk.SIZE || z < 0 || z >= Chunk.SIZE;
+                for (int x = -1; x <= Chunk.SIZE; x += outside ? 1 : Chunk.SIZE + 1) {
+                    planes[ChunkMesher.getBorderIndex(x, y, z)] = getBlock(baseY + y * cellSize, cellSize, heights[HeightmapCache.getIndex(x, z)]);
+                }
+            }
+        }
+        return planes;
+    }
+
+    /**
+     * Gets the terrain height at the center of each cell column of a region and of its border, shared by
+     * the regions of a vertical stack, laid out as {@link HeightmapCache#getIndex}.
+     */
+    private static int[] getLodHeights(Chunk chunk) {
+        int cellSize = 1 << chunk.getLodLevel();
+        HeightmapCache cache = lodHeightmaps.computeIfAbsent(chunk.getLodLevel(), level -> new HeightmapCache(
+                Integer.getInteger("mineshit.heightmapCacheSize", 1024), (columnX, columnZ, heights) -> {
+            int baseX = columnX * Chunk.SIZE;
+            int baseZ = columnZ * Chunk.SIZE;
+            for (int z = -1; z <= Chunk.SIZE; z++) {
+                for (int x = -1; x <= Chunk.SIZE; x++) {
+                    heights[HeightmapCache.getIndex(x, z)] = getTerrainHeight(baseX + x * cellSize + cellSize / 2, baseZ + z * cellSize + cellSize / 2);
+                }
+            }
+        }));
+        return cache.getHeights(chunk.getPosition().x, chunk.getPosition().z);
+    }
+
+    /**
+     * Gets the block of a terrain cell: grass for the top solid cell, dirt down to 7 blocks under the
+     * surface, stone below. A cell is solid when its center is under the terrain height, so cells of
+     * a single block reproduce the terrain exactly.
+     *
+     * @param cellY         World Y of the bottom of the cell.
+     * @param cellSize      Size of the cell in blocks.
+     * @param terrainHeight Terrain height of the column.
+     */
+    private static short getBlock(int cellY, int cellSize, int terrainHeight) {
+        int centerY = cellY + cellSize / 2;
+        if (centerY >= terrainHeight) {
+            return (short) BlockType.AIR.ordinal(); // Air block
+        } else if (centerY + cellSize >= terrainHeight) {
+            return (short) BlockType.GRASS.ordinal(); // Surface block
+        } else if (centerY >= terrainHeight - 7) {
+            return (short) BlockType.DIRT.ordinal(); // Subsurface block
+        } else {
+            return (short) BlockType.STONE.ordinal(); // Deep block
+        }
     }
 }
@@ -0,0 +1,86 @@
+package game.utils;
+
+import game.Chunk;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Terrain heights of chunk columns, shared by every chunk of a vertical stack. A heightmap covers the
+ * {@code Chunk.SIZE * Chunk.SIZE} block columns of a chunk column plus a one block border, and is generated once
+ * however many chunks of the stack are generated, even concurrently. The oldest heightmaps are dropped past
+ * the configured count.
+ */
+public class HeightmapCache {
+
+    public static final int STRIDE = Chunk.SIZE + 2;
+
+    /**
+     * Fills the heightmap of a chunk column, laid out as {@link #getIndex}.
+     */
+    @FunctionalInterface
+    public interface Generator {
+        void generate(int columnX, int columnZ, int[] heights);
+    }
+
+    private final ConcurrentHashMap<Long, int[]> cache;
+    private final ConcurrentLinkedQueue<Long> order;
+    private final Generator generator;
+    private final int maxColumns;
+
+    public HeightmapCache(int maxColumns, Generator generator) {
+        this.cache = new ConcurrentHashMap<>();
+        this.order = new ConcurrentLinkedQueue<>();
+        this.generator = generator;
+        this.maxColumns = maxColumns;
+    }
+
+    /**
+     * Gets the heightmap of a chunk column, generating it on first use. The array must not be written.
+     *
+     * @param columnX Chunk grid X of the column.
+     * @param columnZ Chunk grid Z of the column.
+     */
+    public int[] getHeights(int columnX, int columnZ) {
+        long key = (((long) columnX) << 32) | (columnZ & 0xFFFFFFFFL);
+
+        int[] heights = cache.get(key);
+        if (heights != null) {
+            return heights;
+        }
+
+        heights = cache.computeIfAbsent(key, k -> {
+            int[] generated = new int[STRIDE * STRIDE];
+            generator.generate(columnX, columnZ, generated);
+            order.add(k);
+            return generated;
+        });
+
+        while (cache.size() > maxColumns) {
+            Long oldestKey = order.poll();
+            if (oldestKey == null) break;
+            cache.remove(oldestKey);
+        }
+
+        return heights;
+    }
+
+    /**
+     * Gets the index of a block column in a heightmap.
+     *
+     * @param x Local X of the block column, from -1 to {@code Chunk.SIZE}.
+     * @param z Local Z of the block column, same range.
+     */
+    public static int getIndex(int x, int z) {
+        return (x + 1) + (z + 1) * STRIDE;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+        order.clear();
+    }
+}
@@ -0,0 +1,133 @@
+package game.utils;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Growable list of longs stored in native memory. The mesher appends packed faces to it and the same
+ * memory is handed to OpenGL for the upload, so faces are never boxed nor copied on the heap.
+ * <p>
+ * Not thread safe. The memory is not tracked by the GC and must be released with {@link #free()}.
+ */
+public class NativeLongBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long address;
+    private int capacity;
+    private int size;
+
+    public NativeLongBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public NativeLongBuffer(int initialCapacity) {
+        this.capacity = Math.max(initialCapacity, 1);
+        this.address = MemoryUtil.nmemAllocChecked((long) capacity * Long.BYTES);
+    }
+
+    /**
+     * Appends a value, doubling the capacity when full.
+     */
+    public void add(long value) {
+        if (size == capacity) {
+            grow(size + 1);
+        }
+        MemoryUtil.memPutLong(address + ((long) size++ << 3), value);
+    }
+
+    /**
+     * Appends all the values of an array.
+     */
+    public void addAll(long[] values) {
+        if (size + values.length > capacity) {
+            grow(size + values.length);
+        }
+        MemoryUtil.memLongBuffer(address + ((long) size << 3), values.length).put(values);
+        size += values.length;
+    }
+
+    public long get(int index) {
+        Objects.checkIndex(index, size);
+        return MemoryUtil.memGetLong(address + ((long) index << 3));
+    }
+
+    public void set(int index, long value) {
+        Objects.checkIndex(index, size);
+        MemoryUtil.memPutLong(address + ((long) index << 3), value);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Empties the buffer, keeping its capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets a view of the values, in native byte order. The view is only valid until the buffer grows or is freed.
+     */
+    public ByteBuffer asByteBuffer() {
+        return MemoryUtil.memByteBuffer(address, size * Long.BYTES);
+    }
+
+    /**
+     * Gets a view of a range of values, in native byte order. Same validity as {@link #asByteBuffer()}.
+     *
+     * @param from First index (inclusive).
+     * @param to   Last index (exclusive).
+     */
+    public ByteBuffer asByteBuffer(int from, int to) {
+        Objects.checkFromToIndex(from, to, size);
+        return MemoryUtil.memByteBuffer(address + ((long) from << 3), (to - from) * Long.BYTES);
+    }
+
+    public long[] toArray() {
+        return toArray(0, size);
+    }
+
+    /**
+     * Copies a range of values to a new array.
+     *
+     * @param from First index (inclusive).
+     * @param to   Last index (exclusive).
+     */
+    public long[] toArray(int from, int to) {
+        Objects.checkFromToIndex(from, to, size);
+        long[] values = new long[to - from];
+        MemoryUtil.memLongBuffer(address + ((long) from << 3), to - from).get(values);
+        return values;
+    }
+
+    /**
+     * Releases the native memory. The buffer must not be used afterwards.
+     */
+    public void free() {
+        if (address != 0) {
+            MemoryUtil.nmemFree(address);
+            address = 0;
+            capacity = 0;
+            size = 0;
+        }
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(capacity * 2, minCapacity);
+        address = MemoryUtil.nmemReallocChecked(address, (long) newCapacity * Long.BYTES);
+        capacity = newCapacity;
+    }
+}
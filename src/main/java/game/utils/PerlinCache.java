@@ -1,51 +1,163 @@
 package game.utils;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Bounded cache of noise values, shared by the generator threads without locks. Entries are primitive
+ * slots grouped in sets of {@link #WAYS}: a key can only live in the set its hash points to, so a lookup
+ * reads at most one set, and a miss evicts from that set with the CLOCK policy. Each slot has a reference
+ * bit set by hits, and the set hand skips and clears referenced slots, so values read again survive
+ * values read once.
+ * <p>
+ * Each slot is guarded by a stamp, as a sequence lock: a writer makes the stamp odd while it writes the key
+ * and value, then publishes a greater stamp. Readers never wait, they check that the stamp did not change
+ * around their read. A writer finding its slot taken does not cache its value, it never waits either.
+ */
 public class PerlinCache {
-    private final ConcurrentHashMap<Long, Float> cache;
-    private final ConcurrentLinkedQueue<Long> order;
+
+    private static final int WAYS = 8;
+    // Stamp flags: bit 0 while a writer owns the slot, bit 1 while the slot holds an entry. Versions count from bit 2
+    private static final int WRITING = 1;
+    private static final int OCCUPIED = 2;
+    private static final int VERSION_STEP = 4;
+
+    private final AtomicLongArray keys;
+    private final AtomicIntegerArray values;   // Float bits
+    private final AtomicIntegerArray stamps;
+    private final AtomicIntegerArray referenced;
+    private final int[] hands;                 // CLOCK hand of each set, a hint that races harmlessly
+    private final int setMask;
     private final FastNoiseLite noise;
-    private final int maxCacheSize;
 
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param seed         Noise seed.
+     * @param maxCacheSize Number of values kept at least, rounded up to a power of two sets of {@link #WAYS} slots.
+     */
     public PerlinCache(long seed, int maxCacheSize) {
         this.noise = new FastNoiseLite();
         this.noise.SetSeed((int) seed);
         this.noise.SetNoiseType(FastNoiseLite.NoiseType.OpenSimplex2);
         this.noise.SetFrequency(0.006f);
 
-        this.cache = new ConcurrentHashMap<>();
-        this.order = new ConcurrentLinkedQueue<>();
-        this.maxCacheSize = maxCacheSize;
+        int setCount = Integer.highestOneBit(Math.max((maxCacheSize + WAYS - 1) / WAYS, 1) * 2 - 1);
+        this.keys = new AtomicLongArray(setCount * WAYS);
+        this.values = new AtomicIntegerArray(setCount * WAYS);
+        this.stamps = new AtomicIntegerArray(setCount * WAYS);
+        this.referenced = new AtomicIntegerArray(setCount * WAYS);
+        this.hands = new int[setCount];
+        this.setMask = setCount - 1;
     }
 
     public float getNoise(int x, int z) {
         long key = (((long) x) << 32) | (z & 0xFFFFFFFFL);
+        int set = getSet(key);
+        int base = set * WAYS;
+
+        for (int slot = base; slot < base + WAYS; slot++) {
+            int stamp = stamps.get(slot);
+            if ((stamp & (WRITING | OCCUPIED)) != OCCUPIED || keys.get(slot) != key) continue;
+            int bits = values.get(slot);
+            if (stamps.get(slot) != stamp) continue;
 
-        if (cache.containsKey(key)) {
-            return cache.get(key);
+            if (referenced.getPlain(slot) == 0) {
+                referenced.setPlain(slot, 1);
+            }
+            hits.increment();
+            return Float.intBitsToFloat(bits);
         }
 
+        misses.increment();
         float value = noise.GetNoise(x, z);
-        cache.put(key, value);
-        order.add(key);
+        // Two threads missing the same key may both insert it, the duplicate is evicted like any other entry
+        insert(set, key, value);
+        return value;
+    }
 
-        if (cache.size() > maxCacheSize) {
-            Long oldestKey = order.poll();
-            if (oldestKey != null) {
-                cache.remove(oldestKey);
+    private void insert(int set, long key, float value) {
+        int base = set * WAYS;
+        int slot = -1;
+        for (int i = base; i < base + WAYS; i++) {
+            if ((stamps.get(i) & (WRITING | OCCUPIED)) == 0) {
+                slot = i;
+                break;
+            }
+        }
+        if (slot < 0) {
+            // CLOCK: give referenced slots a second chance, two turns at most
+            int hand = hands[set];
+            for (int step = 0; step < 2 * WAYS; step++) {
+                int candidate = base + (hand + step) % WAYS;
+                if (referenced.getPlain(candidate) == 0) {
+                    slot = candidate;
+                    hands[set] = (hand + step + 1) % WAYS;
+                    break;
+                }
+                referenced.setPlain(candidate, 0);
+            }
+            if (slot < 0) {
+                slot = base + hand;
             }
         }
 
-        return value;
+        int stamp = stamps.get(slot);
+        if ((stamp & WRITING) != 0 || !stamps.compareAndSet(slot, stamp, stamp | WRITING)) {
+            return;
+        }
+        if ((stamp & OCCUPIED) != 0) {
+            evictions.increment();
+        }
+        keys.set(slot, key);
+        values.set(slot, Float.floatToRawIntBits(value));
+        referenced.setPlain(slot, 0);
+        stamps.set(slot, (stamp & -VERSION_STEP) + VERSION_STEP | OCCUPIED);
     }
 
-    public void clear() {
-        cache.clear();
-        order.clear();
+    private int getSet(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & setMask;
     }
-}
 
+    /**
+     * Gets the number of values the cache can hold.
+     */
+    public int getCapacity() {
+        return stamps.length();
+    }
 
+    public long getHits() {
+        return hits.sum();
+    }
 
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Formats the hit rate and the evictions since the previous report, then resets the counters.
+     */
+    public String report() {
+        long hitCount = hits.sumThenReset();
+        long lookups = hitCount + misses.sumThenReset();
+        return String.format("noise cache: %d hits of %d lookups (%.1f%%), %d evictions, %d slots",
+                hitCount, lookups, lookups == 0 ? 0 : 100.0 * hitCount / lookups, evictions.sumThenReset(), getCapacity());
+    }
+
+    /**
+     * Drops every entry. Values being inserted meanwhile may stay.
+     */
+    public void clear() {
+        for (int slot = 0; slot < stamps.length(); slot++) {
+            int stamp = stamps.get(slot);
+            if ((stamp & (WRITING | OCCUPIED)) == OCCUPIED) {
+                // A new version, so that readers of the old entry see the change
+                stamps.compareAndSet(slot, stamp, (stamp & -VERSION_STEP) + VERSION_STEP);
+            }
+        }
+    }
+}
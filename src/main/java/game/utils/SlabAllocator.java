@@ -0,0 +1,203 @@
+package game.utils;
+
+import org.lwjgl.system.MemoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Off-heap allocator handing out fixed-size blocks carved from large slabs.
+ * Each size class keeps its own slabs and a free stack of block addresses, so allocating and freeing
+ * never touch the Java heap and never fragment. Slabs are only returned to the system by {@link #release()}.
+ * <p>
+ * Live allocations are counted per size class. When leak debugging is enabled, the allocation site of
+ * every live block is also recorded and double frees are rejected.
+ */
+public class SlabAllocator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlabAllocator.class);
+
+    private final SizeClass[] sizeClasses;
+    private final Map<Long, Throwable> allocationSites; // Address -> Allocation stack, null unless debugging leaks
+
+    /**
+     * @param blockSizes    Block size of each size class, in bytes. Must be multiples of 8.
+     * @param blocksPerSlab Number of blocks carved out of each slab.
+     * @param debugLeaks    Whether to record the allocation site of every live block.
+     */
+    public SlabAllocator(int[] blockSizes, int blocksPerSlab, boolean debugLeaks) {
+        this.sizeClasses = new SizeClass[blockSizes.length];
+        for (int i = 0; i < blockSizes.length; i++) {
+            if (blockSizes[i] <= 0 || (blockSizes[i] & 7) != 0) {
+                throw new IllegalArgumentException("Block size must be a positive multiple of 8: " + blockSizes[i]);
+            }
+            sizeClasses[i] = new SizeClass(blockSizes[i], blocksPerSlab);
+        }
+        this.allocationSites = debugLeaks ? new ConcurrentHashMap<>() : null;
+    }
+
+    /**
+     * Allocates a zeroed block.
+     *
+     * @param sizeClass Index of the size class.
+     * @return The address of the block.
+     */
+    public long allocate(int sizeClass) {
+        SizeClass slabs = sizeClasses[sizeClass];
+        long address = slabs.allocate();
+        MemoryUtil.memSet(address, 0, slabs.blockSize);
+        if (allocationSites != null) {
+            allocationSites.put(address, new Throwable("Off-heap block allocated here"));
+        }
+        return address;
+    }
+
+    /**
+     * Returns a block to its size class.
+     *
+     * @param sizeClass Index of the size class the block was allocated from.
+     * @param address   Address of the block.
+     */
+    public void free(int sizeClass, long address) {
+        if (allocationSites != null && allocationSites.remove(address) == null) {
+            throw new IllegalStateException("Freeing an off-heap block that is not allocated: 0x" + Long.toHexString(address));
+        }
+        sizeClasses[sizeClass].free(address);
+    }
+
+    public int getBlockSize(int sizeClass) {
+        return sizeClasses[sizeClass].blockSize;
+    }
+
+    /**
+     * Gets the number of blocks currently allocated across all size classes.
+     */
+    public long getLiveBlocks() {
+        long live = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            live += sizeClass.getLiveBlocks();
+        }
+        return live;
+    }
+
+    /**
+     * Gets the number of bytes handed out to callers.
+     */
+    public long getUsedBytes() {
+        long used = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            used += (long) sizeClass.getLiveBlocks() * sizeClass.blockSize;
+        }
+        return used;
+    }
+
+    /**
+     * Gets the number of bytes reserved from the system by the slabs.
+     */
+    public long getReservedBytes() {
+        long reserved = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            reserved += sizeClass.getReservedBytes();
+        }
+        return reserved;
+    }
+
+    /**
+     * Logs the blocks that are still allocated, with their allocation site when leak debugging is enabled.
+     *
+     * @return The number of live blocks.
+     */
+    public long reportLeaks() {
+        long live = getLiveBlocks();
+        if (live == 0) {
+            return 0;
+        }
+
+        LOGGER.warn("{} off-heap blocks still allocated ({} bytes)", live, getUsedBytes());
+        if (allocationSites != null) {
+            allocationSites.forEach((address, site) ->
+                    LOGGER.warn("Leaked off-heap block 0x{}", Long.toHexString(address), site));
+        }
+        return live;
+    }
+
+    /**
+     * Frees every slab. Blocks still allocated become invalid.
+     */
+    public void release() {
+        for (SizeClass sizeClass : sizeClasses) {
+            sizeClass.release();
+        }
+        if (allocationSites != null) {
+            allocationSites.clear();
+        }
+    }
+
+    private static class SizeClass {
+        private final int blockSize;
+        private final int blocksPerSlab;
+
+        private long[] slabs = new long[4];
+        private int slabCount;
+        private long[] freeBlocks = new long[64]; // Stack of free block addresses
+        private int freeCount;
+        private int liveBlocks;
+
+        SizeClass(int blockSize, int blocksPerSlab) {
+            this.blockSize = blockSize;
+            this.blocksPerSlab = blocksPerSlab;
+        }
+
+        synchronized long allocate() {
+            if (freeCount == 0) {
+                addSlab();
+            }
+            liveBlocks++;
+            return freeBlocks[--freeCount];
+        }
+
+        synchronized void free(long address) {
+            if (freeCount == freeBlocks.length) {
+                freeBlocks = Arrays.copyOf(freeBlocks, freeBlocks.length * 2);
+            }
+            freeBlocks[freeCount++] = address;
+            liveBlocks--;
+        }
+
+        synchronized int getLiveBlocks() {
+            return liveBlocks;
+        }
+
+        synchronized long getReservedBytes() {
+            return (long) slabCount * blocksPerSlab * blockSize;
+        }
+
+        synchronized void release() {
+            for (int i = 0; i < slabCount; i++) {
+                MemoryUtil.nmemFree(slabs[i]);
+            }
+            slabCount = 0;
+            freeCount = 0;
+            liveBlocks = 0;
+        }
+
+        private void addSlab() {
+            long slab = MemoryUtil.nmemAllocChecked((long) blockSize * blocksPerSlab);
+            if (slabCount == slabs.length) {
+                slabs = Arrays.copyOf(slabs, slabs.length * 2);
+            }
+            slabs[slabCount++] = slab;
+
+            if (freeBlocks.length < freeCount + blocksPerSlab) {
+                freeBlocks = Arrays.copyOf(freeBlocks, Math.max(freeBlocks.length * 2, freeCount + blocksPerSlab));
+            }
+            // Pushed in reverse so that blocks are handed out in address order
+            for (int i = blocksPerSlab - 1; i >= 0; i--) {
+                freeBlocks[freeCount++] = slab + (long) i * blockSize;
+            }
+        }
+    }
+}
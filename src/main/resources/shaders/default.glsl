@@ -2,13 +2,14 @@
 #version 460 core
 
 layout(location = 0) in vec3 aBaseVertex; // Vertices d'une face définie dans le shader
-layout(location = 1) in uint aInstanceData; // Données compressées pour l'instance
+layout(location = 1) in uvec2 aInstanceData; // Données compressées pour l'instance, puis occlusion ambiante
 
 uniform mat4 uCameraSpaceMatrix;
 uniform mat4 uLightSpaceMatrix; // Matrice espace lumière
+uniform int uDrawOffset; // Index of the first camera pass command, the shadow pass commands come first
 
 layout(std430, binding = 0) buffer ChunkPositions {
-    vec3 chunkPosition[];
+    vec4 chunkPosition[]; // Chunk grid position, then the size of a cell in blocks
 };
 
 out int TextureLayer;
@@ -16,6 +17,8 @@ out vec3 Normal;
 out vec3 FragPos;
 out vec4 FragPosLightSpace; // Position dans l'espace de la lumière
 out int FaceIndex;
+out vec2 QuadCoord; // Position on the quad from 0 to 1 along its two axes
+flat out vec4 CornerOcclusion;
 
 const int FACE_BACK = 0;
 const int FACE_FRONT = 1;
@@ -39,6 +42,26 @@ int decodeFace(uint encodedInstance) {
     return int((encodedInstance >> 15u) & 0x7u); // Bits 15-17 (3 bits)
 }
 
+// Size of a merged quad along its two axes: (x, z) for top and bottom, (z, y) for left and right, (x, y) for back and front
+vec2 decodeSize(uint encodedInstance) {
+    uint width = ((encodedInstance >> 26u) & 0x7u) + 1u;  // Bits 26-28
+    uint height = ((encodedInstance >> 29u) & 0x7u) + 1u; // Bits 29-31
+    return vec2(width, height);
+}
+
+vec3 decodeScale(uint encodedInstance) {
+    vec2 size = decodeSize(encodedInstance);
+    int face = decodeFace(encodedInstance);
+    if (face == FACE_TOP || face == FACE_BOTTOM) return vec3(size.x, 1.0, size.y);
+    if (face == FACE_LEFT || face == FACE_RIGHT) return vec3(1.0, size.y, size.x);
+    return vec3(size.x, size.y, 1.0);
+}
+
+// Occlusion of the (u0, v0), (u1, v0), (u0, v1) and (u1, v1) corners of a quad, from 0 (open) to 3
+vec4 decodeOcclusion(uint encodedOcclusion) {
+    return vec4(encodedOcclusion & 0x3u, (encodedOcclusion >> 2u) & 0x3u, (encodedOcclusion >> 4u) & 0x3u, (encodedOcclusion >> 6u) & 0x3u);
+}
+
 vec3 decodeNormal(uint encodedInstance) {
     uint normal = decodeFace(encodedInstance);
     if (normal == 0u) return vec3(0.0, 0.0, 1.0);        // FRONT
@@ -51,40 +74,59 @@ vec3 decodeNormal(uint encodedInstance) {
 }
 
 void main() {
+    uint instanceData = aInstanceData.x;
+
+    // Type 0 marks an empty slot kept for in-place edits: move the quad outside of the clip volume
+    if (decodeBlock(instanceData) == 0) {
+        gl_Position = vec4(0.0, 0.0, 2.0, 1.0);
+        return;
+    }
+
     uint drawIndex = gl_DrawID;
 
-    vec3 instancePos = decodePosition(aInstanceData);
+    vec3 instancePos = decodePosition(instanceData);
     vec3 basePos = aBaseVertex;
 
-    if (decodeFace(aInstanceData) == FACE_TOP) {
+    if (decodeFace(instanceData) == FACE_TOP) {
         FaceIndex = FACE_TOP;
         basePos.y++;
-    } else if (decodeFace(aInstanceData) == FACE_BOTTOM) {
+    } else if (decodeFace(instanceData) == FACE_BOTTOM) {
         FaceIndex = FACE_BOTTOM;
         basePos.xz = basePos.zx;
-    } else if (decodeFace(aInstanceData) == FACE_LEFT) {
+    } else if (decodeFace(instanceData) == FACE_LEFT) {
         FaceIndex = FACE_LEFT;
         basePos.xy = basePos.yx;
-    } else if (decodeFace(aInstanceData) == FACE_RIGHT) {
+    } else if (decodeFace(instanceData) == FACE_RIGHT) {
         FaceIndex = FACE_RIGHT;
         basePos.zxy = basePos.xyz;
         basePos.x++;
-    } else if (decodeFace(aInstanceData) == FACE_BACK) {
+    } else if (decodeFace(instanceData) == FACE_BACK) {
         FaceIndex = FACE_BACK;
         basePos.zy = basePos.yz;
-    } else if (decodeFace(aInstanceData) == FACE_FRONT) {
+    } else if (decodeFace(instanceData) == FACE_FRONT) {
         FaceIndex = FACE_FRONT;
         basePos.xzy = basePos.zyx;
         basePos.z++;
     }
 
+    if (FaceIndex == FACE_TOP || FaceIndex == FACE_BOTTOM) {
+        QuadCoord = basePos.xz;
+    } else if (FaceIndex == FACE_LEFT || FaceIndex == FACE_RIGHT) {
+        QuadCoord = basePos.zy;
+    } else {
+        QuadCoord = basePos.xy;
+    }
+    CornerOcclusion = decodeOcclusion(aInstanceData.y);
+
+    basePos *= decodeScale(instanceData);
     FragPos = basePos;
 
-    vec3 offset = chunkPosition[drawIndex] * 32;
-    basePos = basePos + instancePos;
+    vec4 chunk = chunkPosition[uDrawOffset + int(drawIndex)];
+    vec3 offset = chunk.xyz * 32;
+    basePos = (basePos + instancePos) * chunk.w; // Level of detail regions have cells larger than a block
 
-    TextureLayer = decodeBlock(aInstanceData);
-    Normal = decodeNormal(aInstanceData);
+    TextureLayer = decodeBlock(instanceData);
+    Normal = decodeNormal(instanceData);
 
     FragPosLightSpace = uLightSpaceMatrix * vec4(basePos + offset, 1.0);
 
@@ -104,6 +146,8 @@ flat in int FaceIndex;
 in vec3 Normal;
 in vec3 FragPos;
 in vec4 FragPosLightSpace;
+in vec2 QuadCoord;
+flat in vec4 CornerOcclusion;
 
 out vec4 FragColor;
 
@@ -142,43 +186,50 @@ void main() {
 
     FragColor = vec4(color, 1.0);
 
+    // Merged quads span several blocks: the texture repeats once per block inside its slot of the face strip
     float faceWidth = 1.0 / 6.0;
-    vec2 textureCoord = vec2(0);
+    vec2 blockCoord = vec2(0);
+    int faceIndex = 0;
 
     if(FaceIndex == FACE_LEFT){
-        int faceIndex = 1;
-        textureCoord = vec2(FragPos.z * faceWidth + faceWidth * faceIndex, FragPos.y);
+        faceIndex = 1;
+        blockCoord = vec2(FragPos.z, FragPos.y);
     }else if(FaceIndex == FACE_RIGHT){
-        int faceIndex = 2;
-        textureCoord = vec2(FragPos.z * faceWidth,FragPos.y);
-        textureCoord.x += faceWidth * faceIndex;
+        faceIndex = 2;
+        blockCoord = vec2(FragPos.z, FragPos.y);
     }else if(FaceIndex == FACE_TOP){
-        int faceIndex = 0;
-        textureCoord = vec2(FragPos.x * faceWidth,FragPos.z);
-        textureCoord.x += faceWidth * faceIndex;
+        faceIndex = 0;
+        blockCoord = vec2(FragPos.x, FragPos.z);
     }else if(FaceIndex == FACE_BOTTOM){
-        int faceIndex = 5;
-        textureCoord = vec2(FragPos.x * faceWidth,FragPos.z);
-        textureCoord.x += faceWidth * faceIndex;
+        faceIndex = 5;
+        blockCoord = vec2(FragPos.x, FragPos.z);
     }else if(FaceIndex == FACE_FRONT){
-        int faceIndex = 3;
-        textureCoord = vec2(FragPos.x * faceWidth,FragPos.y);
-        textureCoord.x += faceWidth * faceIndex;
+        faceIndex = 3;
+        blockCoord = vec2(FragPos.x, FragPos.y);
     }else if(FaceIndex == FACE_BACK){
-        int faceIndex = 4;
-        textureCoord = vec2(FragPos.x * faceWidth,FragPos.y);
-        textureCoord.x += faceWidth * faceIndex;
+        faceIndex = 4;
+        blockCoord = vec2(FragPos.x, FragPos.y);
     }
 
+    vec2 textureCoord = vec2(fract(blockCoord.x) * faceWidth + faceWidth * faceIndex, fract(blockCoord.y));
+    // Gradients of the unwrapped coordinates, so the mip level does not jump at block borders
+    vec2 textureDx = dFdx(blockCoord) * vec2(faceWidth, 1.0);
+    vec2 textureDy = dFdy(blockCoord) * vec2(faceWidth, 1.0);
+
     float lightContribution = max(dot(Normal, lightDir), 0.0);
     float shadow = calculateShadow(FragPosLightSpace, Normal);
-    color = texture(textureArray, vec3(textureCoord, TextureLayer)).rgb;
+    color = textureGrad(textureArray, vec3(textureCoord, TextureLayer), textureDx, textureDy).rgb;
 
     // Calcul de l'éclairement progressif
     float ambient = 0.5; // Lumière ambiante minimale
     float diffuse = lightContribution * shadow; // Lumière diffuse combinée avec l'ombre
 
+    // Bilinear blend of the corner occlusions, so the result does not depend on how the quad is split in triangles
+    float occlusion = mix(mix(CornerOcclusion.x, CornerOcclusion.y, QuadCoord.x),
+                          mix(CornerOcclusion.z, CornerOcclusion.w, QuadCoord.x), QuadCoord.y);
+    float ambientOcclusion = 1.0 - occlusion * 0.2;
+
     // Mélange de la lumière ambiante et diffuse
-    FragColor = vec4(color * (ambient + diffuse), 1.0);
+    FragColor = vec4(color * (ambient + diffuse) * ambientOcclusion, 1.0);
 }
 //@endfs
\ No newline at end of file
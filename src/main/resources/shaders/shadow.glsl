@@ -8,7 +8,7 @@ uniform mat4 uLightSpaceMatrix;
 uniform vec3 lightDir;
 
 layout(std430, binding = 0) buffer ChunkPositions {
-    vec3 chunkPosition[];
+    vec4 chunkPosition[]; // Chunk grid position, then the size of a cell in blocks
 };
 
 const int FACE_BACK = 0;
@@ -33,8 +33,29 @@ int decodeFace(uint encodedInstance) {
     return int((encodedInstance >> 15u) & 0x7u); // Bits 15-17 (3 bits)
 }
 
+// Size of a merged quad along its two axes: (x, z) for top and bottom, (z, y) for left and right, (x, y) for back and front
+vec2 decodeSize(uint encodedInstance) {
+    uint width = ((encodedInstance >> 26u) & 0x7u) + 1u;  // Bits 26-28
+    uint height = ((encodedInstance >> 29u) & 0x7u) + 1u; // Bits 29-31
+    return vec2(width, height);
+}
+
+vec3 decodeScale(uint encodedInstance) {
+    vec2 size = decodeSize(encodedInstance);
+    int face = decodeFace(encodedInstance);
+    if (face == FACE_TOP || face == FACE_BOTTOM) return vec3(size.x, 1.0, size.y);
+    if (face == FACE_LEFT || face == FACE_RIGHT) return vec3(1.0, size.y, size.x);
+    return vec3(size.x, size.y, 1.0);
+}
+
 void main() {
 
+    // Type 0 marks an empty slot kept for in-place edits: move the quad outside of the clip volume
+    if (decodeBlock(aInstanceData) == 0) {
+        gl_Position = vec4(0.0, 0.0, 2.0, 1.0);
+        return;
+    }
+
     uint drawIndex = gl_DrawID;
     vec3 instancePos = decodePosition(aInstanceData);
     vec3 basePos = aBaseVertex;
@@ -55,8 +76,11 @@ void main() {
         basePos.z++;
     }
 
-    vec3 offset = chunkPosition[drawIndex] * 32;
-    basePos = basePos + instancePos;
+    basePos *= decodeScale(aInstanceData);
+
+    vec4 chunk = chunkPosition[drawIndex];
+    vec3 offset = chunk.xyz * 32;
+    basePos = (basePos + instancePos) * chunk.w; // Level of detail regions have cells larger than a block
 
     gl_Position = uLightSpaceMatrix * vec4(basePos + offset, 1.0);
 }
@@ -0,0 +1,100 @@
+import game.Chunk;
+import game.ChunkMesher;
+import game.ChunkSnapshot;
+import game.utils.NativeLongBuffer;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AmbientOcclusionBenchmarkTest {
+
+    private static final int CHUNKS_PER_AXIS = 4;
+    private static final int ROUNDS = 40;
+    private static final ChunkMesher.Mode[] MODES = {ChunkMesher.Mode.BINARY, ChunkMesher.Mode.GREEDY};
+
+    @Test
+    void compareMeshingWithAndWithoutOcclusion() {
+        Map<Vector3i, Chunk> chunks = new HashMap<>();
+        for (int x = 0; x < CHUNKS_PER_AXIS; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = 0; z < CHUNKS_PER_AXIS; z++) {
+                    Vector3i position = new Vector3i(x, y, z);
+                    chunks.put(position, new Chunk(position));
+                }
+            }
+        }
+
+        List<ChunkSnapshot> snapshots = new ArrayList<>();
+        List<ChunkSnapshot[]> neighbors = new ArrayList<>();
+        for (Map.Entry<Vector3i, Chunk> entry : chunks.entrySet()) {
+            ChunkSnapshot[] neighborSnapshots = new ChunkSnapshot[ChunkMesher.NEIGHBOR_COUNT];
+            for (int i = 0; i < neighborSnapshots.length; i++) {
+                Chunk neighbor = chunks.get(ChunkMesher.getNeighborOffset(i).add(entry.getKey()));
+                neighborSnapshots[i] = neighbor != null ? neighbor.snapshot() : null;
+            }
+            snapshots.add(entry.getValue().snapshot());
+            neighbors.add(neighborSnapshots);
+        }
+
+        NativeLongBuffer faces = new NativeLongBuffer();
+        // Minimum time of a pass over every chunk, by mode then without and with occlusion
+        long[][] bestTimes = new long[MODES.length][2];
+        for (long[] times : bestTimes) {
+            Arrays.fill(times, Long.MAX_VALUE);
+        }
+        long occludedFaces = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int mode = 0; mode < MODES.length; mode++) {
+                // Alternate which setting runs first so that neither always gets the warmer caches
+                for (int pass = 0; pass < 2; pass++) {
+                    boolean ambientOcclusion = (pass + round) % 2 == 1;
+                    long passOccludedFaces = 0;
+                    long startTime = System.nanoTime();
+                    for (int i = 0; i < snapshots.size(); i++) {
+                        faces.clear();
+                        ChunkMesher.mesh(faces, snapshots.get(i), neighbors.get(i), MODES[mode], ambientOcclusion);
+                        for (int slot = 0; slot < faces.size(); slot++) {
+                            if (faces.get(slot) >>> 32 != 0) passOccludedFaces++;
+                        }
+                    }
+                    long time = System.nanoTime() - startTime;
+                    int setting = ambientOcclusion ? 1 : 0;
+                    bestTimes[mode][setting] = Math.min(bestTimes[mode][setting], time);
+
+                    if (ambientOcclusion) {
+                        occludedFaces = passOccludedFaces;
+                    } else {
+                        Assertions.assertEquals(0, passOccludedFaces);
+                    }
+                }
+            }
+        }
+        faces.free();
+
+        StringBuilder line = new StringBuilder("Mesh per chunk, best of " + ROUNDS + " rounds:");
+        for (int mode = 0; mode < MODES.length; mode++) {
+            long plainTime = bestTimes[mode][0];
+            long occlusionTime = bestTimes[mode][1];
+            line.append(' ').append(MODES[mode].name().toLowerCase()).append(' ')
+                    .append(plainTime / snapshots.size() / 1_000).append(" us, with occlusion ")
+                    .append(occlusionTime / snapshots.size() / 1_000).append(" us (")
+                    .append(String.format("%+.1f", 100.0 * (occlusionTime - plainTime) / plainTime)).append("%)");
+        }
+        System.out.println(line);
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            snapshots.get(i).close();
+            for (ChunkSnapshot neighbor : neighbors.get(i)) {
+                if (neighbor != null) neighbor.close();
+            }
+        }
+
+        Assertions.assertTrue(occludedFaces > 0);
+    }
+}
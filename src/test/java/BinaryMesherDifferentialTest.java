@@ -0,0 +1,156 @@
+import game.Chunk;
+import game.ChunkMesher;
+import game.ChunkSnapshot;
+import game.utils.FaceDirection;
+import game.utils.NativeLongBuffer;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class BinaryMesherDifferentialTest {
+
+    @Test
+    void binaryMesherMatchesVoxelMesher() {
+        Random random = new Random(7);
+        Map<Vector3i, Chunk> chunks = new HashMap<>();
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -2; y <= 1; y++) {
+                for (int z = -1; z <= 1; z++) {
+                    Vector3i position = new Vector3i(x, y, z);
+                    Chunk chunk = new Chunk(position);
+                    switch (random.nextInt(4)) {
+                        case 0 -> scatterBlocks(chunk, random, 500);
+                        case 1 -> chunk.convertToColumns();
+                        case 2 -> chunk.fillBox(random.nextInt(32), 0, random.nextInt(32), 32, random.nextInt(33), 32, (short) 3);
+                        default -> { }
+                    }
+                    chunks.put(position, chunk);
+                }
+            }
+        }
+        // A fully solid chunk buried under the others, and a noisy one with every block random
+        chunks.get(new Vector3i(0, -2, 0)).fillChunk((short) 1);
+        scatterBlocks(chunks.get(new Vector3i(1, 0, 1)), random, 20_000);
+
+        int meshed = 0;
+        for (Map.Entry<Vector3i, Chunk> entry : chunks.entrySet()) {
+            ChunkSnapshot[] neighbors = new ChunkSnapshot[ChunkMesher.NEIGHBOR_COUNT];
+            for (int i = 0; i < neighbors.length; i++) {
+                Chunk neighbor = chunks.get(ChunkMesher.getNeighborOffset(i).add(entry.getKey()));
+                neighbors[i] = neighbor != null ? neighbor.snapshot() : null;
+            }
+
+            NativeLongBuffer voxelFaces = new NativeLongBuffer();
+            NativeLongBuffer binaryFaces = new NativeLongBuffer();
+            try (ChunkSnapshot snapshot = entry.getValue().snapshot()) {
+                ChunkMesher.mesh(voxelFaces, snapshot, neighbors, ChunkMesher.Mode.VOXEL);
+                ChunkMesher.mesh(binaryFaces, snapshot, neighbors, ChunkMesher.Mode.BINARY);
+
+                // Both meshers emit the same faces and occlusion, in a different order
+                long[] expected = voxelFaces.toArray();
+                long[] actual = binaryFaces.toArray();
+                Arrays.sort(expected);
+                Arrays.sort(actual);
+                Assertions.assertArrayEquals(expected, actual, "Chunk " + entry.getKey());
+                if (expected.length > 0) meshed++;
+            } finally {
+                voxelFaces.free();
+                binaryFaces.free();
+                for (ChunkSnapshot neighbor : neighbors) {
+                    if (neighbor != null) neighbor.close();
+                }
+            }
+        }
+        Assertions.assertTrue(meshed > 0);
+    }
+
+    @Test
+    void uniformChunkMatchesDecodedChunk() {
+        Random random = new Random(13);
+        ChunkSnapshot[] neighbors = new ChunkSnapshot[ChunkMesher.NEIGHBOR_COUNT];
+        for (int i = 0; i < neighbors.length; i++) {
+            Chunk neighbor = new Chunk(ChunkMesher.getNeighborOffset(i).add(0, 100, 0));
+            neighbor.fillChunk((short) 1);
+            scatterBlocks(neighbor, random, 20_000);
+            neighbors[i] = neighbor.snapshot();
+        }
+
+        // Same boundary, but a hidden block of another type makes the second chunk go through the decoded path
+        Chunk uniform = new Chunk(new Vector3i(0, 100, 0));
+        uniform.fillChunk((short) 2);
+        Chunk decoded = new Chunk(new Vector3i(0, 100, 0));
+        decoded.fillChunk((short) 2);
+        decoded.setBlock(16, 16, 16, (short) 3);
+        Assertions.assertTrue(uniform.isUniform());
+        Assertions.assertFalse(decoded.isUniform());
+
+        try (ChunkSnapshot uniformSnapshot = uniform.snapshot(); ChunkSnapshot decodedSnapshot = decoded.snapshot()) {
+            for (ChunkMesher.Mode mode : ChunkMesher.Mode.values()) {
+                NativeLongBuffer uniformFaces = new NativeLongBuffer();
+                NativeLongBuffer decodedFaces = new NativeLongBuffer();
+                try {
+                    ChunkMesher.mesh(uniformFaces, uniformSnapshot, neighbors, mode, true);
+                    ChunkMesher.mesh(decodedFaces, decodedSnapshot, neighbors, mode, true);
+                    long[] expected = decodedFaces.toArray();
+                    long[] actual = uniformFaces.toArray();
+                    Arrays.sort(expected);
+                    Arrays.sort(actual);
+                    Assertions.assertTrue(expected.length > 0);
+                    Assertions.assertArrayEquals(expected, actual, "Mode " + mode);
+                } finally {
+                    uniformFaces.free();
+                    decodedFaces.free();
+                }
+            }
+        } finally {
+            for (ChunkSnapshot neighbor : neighbors) {
+                neighbor.close();
+            }
+        }
+    }
+
+    @Test
+    void edgeAndCornerNeighborsOcclude() {
+        for (int i = FaceDirection.values().length; i < ChunkMesher.NEIGHBOR_COUNT; i++) {
+            // A single block touching one edge or corner neighbor, which is the only solid thing around it
+            Vector3i offset = ChunkMesher.getNeighborOffset(i);
+            Chunk neighbor = new Chunk(new Vector3i(offset), 0, (short) 1);
+            Chunk chunk = new Chunk(new Vector3i(0, 0, 0), 0, (short) 0);
+            chunk.setBlock(getTouchingCoordinate(offset.x), getTouchingCoordinate(offset.y), getTouchingCoordinate(offset.z), (short) 2);
+
+            ChunkSnapshot[] neighbors = new ChunkSnapshot[ChunkMesher.NEIGHBOR_COUNT];
+            neighbors[i] = neighbor.snapshot();
+            try (ChunkSnapshot snapshot = chunk.snapshot()) {
+                for (ChunkMesher.Mode mode : ChunkMesher.Mode.values()) {
+                    NativeLongBuffer faces = new NativeLongBuffer();
+                    try {
+                        ChunkMesher.mesh(faces, snapshot, neighbors, mode, true);
+                        Assertions.assertEquals(FaceDirection.values().length, faces.size());
+                        Assertions.assertTrue(Arrays.stream(faces.toArray()).anyMatch(face -> face >>> 32 != 0),
+                                "Neighbor " + offset + ", mode " + mode);
+                    } finally {
+                        faces.free();
+                    }
+                }
+            } finally {
+                neighbors[i].close();
+            }
+        }
+    }
+
+    private static int getTouchingCoordinate(int offset) {
+        return offset < 0 ? 0 : offset > 0 ? Chunk.SIZE - 1 : Chunk.SIZE / 2;
+    }
+
+    private static void scatterBlocks(Chunk chunk, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            chunk.setBlock(random.nextInt(Chunk.SIZE), random.nextInt(Chunk.SIZE), random.nextInt(Chunk.SIZE),
+                    (short) (random.nextBoolean() ? 0 : 1 + random.nextInt(4)));
+        }
+    }
+}
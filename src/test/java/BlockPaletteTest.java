@@ -0,0 +1,35 @@
+import game.utils.BlockPalette;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+public class BlockPaletteTest {
+
+    @Test
+    void grownPaletteKeepsRoomAfterCopyingSmallerOne() {
+        BlockPalette pooled = new BlockPalette();
+        for (short id = 0; id < 64; id++) {
+            pooled.add(id);
+        }
+        BlockPalette small = new BlockPalette();
+        for (short id = 100; id < 104; id++) {
+            small.retain(small.add(id), 1);
+        }
+
+        pooled.copyFrom(small);
+        Assertions.assertEquals(4, pooled.size());
+        Assertions.assertEquals(2, pooled.indexOf((short) 102));
+
+        // Past the slots of the smaller palette, lookups and inserts must still find room
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (short id = 200; id < 260; id++) {
+                pooled.add(id);
+            }
+            for (short id = 200; id < 260; id++) {
+                Assertions.assertEquals(id - 196, pooled.indexOf(id));
+            }
+            Assertions.assertEquals(-1, pooled.indexOf((short) 7));
+        });
+    }
+}
@@ -0,0 +1,28 @@
+import game.Chunk;
+import game.utils.NativeLongBuffer;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ChunkFreeTest {
+
+    @Test
+    void meshFinishedAfterFreeIsDropped() {
+        Chunk chunk = new Chunk(new Vector3i(0, 0, 0));
+        long meshVersion = chunk.getVersion();
+        chunk.setState(2);
+        chunk.free();
+
+        // A mesh task racing the unload: its faces are recycled instead of installed, and the chunk is not flagged
+        NativeLongBuffer faces = Chunk.POOL.takeFaceBuffer();
+        faces.add(1);
+        Assertions.assertFalse(chunk.applyMesh(faces, chunk.getVersion()));
+        Assertions.assertFalse(chunk.applyMesh(Chunk.POOL.takeFaceBuffer(), meshVersion));
+        Assertions.assertFalse(chunk.isMeshed());
+        Assertions.assertTrue(chunk.isFreed());
+
+        chunk.setState(0);
+        Assertions.assertFalse(chunk.markMeshed());
+        Assertions.assertEquals(0, chunk.getState());
+    }
+}
@@ -0,0 +1,52 @@
+import game.Chunk;
+import game.ChunkSummary;
+import game.utils.FaceDirection;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class ChunkSummaryTest {
+
+    @Test
+    void boxFillsMatchRebuiltSummary() {
+        Random random = new Random(7);
+        Chunk chunk = new Chunk(new Vector3i(2, 0, 1));
+        short[] blocks = new short[Chunk.TOTAL_BLOCKS];
+
+        for (int n = 0; n < 400; n++) {
+            int minX = random.nextInt(Chunk.SIZE), minY = random.nextInt(Chunk.SIZE), minZ = random.nextInt(Chunk.SIZE);
+            // Some boxes reach the boundaries, so that whole planes go solid or empty
+            int maxX = random.nextBoolean() ? Chunk.SIZE : minX + 1 + random.nextInt(Chunk.SIZE - minX);
+            int maxY = random.nextBoolean() ? Chunk.SIZE : minY + 1 + random.nextInt(Chunk.SIZE - minY);
+            int maxZ = random.nextBoolean() ? Chunk.SIZE : minZ + 1 + random.nextInt(Chunk.SIZE - minZ);
+            if (random.nextInt(8) == 0) {
+                minX = minY = minZ = 0;
+            }
+            short blockId = (short) (random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(3));
+            chunk.fillBox(minX, minY, minZ, maxX, maxY, maxZ, blockId);
+            if (random.nextInt(4) == 0) {
+                chunk.fillColumn(random.nextInt(Chunk.SIZE), random.nextInt(Chunk.SIZE), 0, random.nextInt(Chunk.SIZE + 1), (short) 0);
+            }
+
+            Chunk rebuilt = new Chunk(chunk.getPosition(), 0, (short) 0);
+            rebuilt.setBlocks(chunk.getBlocks(blocks));
+            assertSameSummary(rebuilt.getSummary(), chunk.getSummary(), n);
+        }
+    }
+
+    private static void assertSameSummary(ChunkSummary expected, ChunkSummary actual, int step) {
+        Assertions.assertEquals(expected.isEmpty(), actual.isEmpty(), "step " + step);
+        Assertions.assertEquals(expected.isFullySolid(), actual.isFullySolid(), "step " + step);
+        for (FaceDirection face : FaceDirection.values()) {
+            Assertions.assertEquals(expected.isFaceSolid(face), actual.isFaceSolid(face), face + " at step " + step);
+            Assertions.assertEquals(expected.isFaceEmpty(face), actual.isFaceEmpty(face), face + " at step " + step);
+        }
+        for (int z = 0; z < Chunk.SIZE; z++) {
+            for (int x = 0; x < Chunk.SIZE; x++) {
+                Assertions.assertEquals(expected.getHeight(x, z), actual.getHeight(x, z), "column " + x + ", " + z + " at step " + step);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import game.Chunk;
+import game.utils.GenerationEngine;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class ColumnStorageBenchmarkTest {
+
+    private static final int CHUNK_COUNT = 32;
+    private static final int LOOKUPS = 1_000_000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void compareColumnAndPalettedStorage() {
+        Chunk[] paletted = new Chunk[CHUNK_COUNT];
+        Chunk[] columns = new Chunk[CHUNK_COUNT];
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            // Chunks holding the terrain surface, where columns hold several runs
+            int x = i % 8, z = i / 8;
+            int surfaceY = GenerationEngine.getTerrainHeight(x * Chunk.SIZE + Chunk.SIZE / 2, z * Chunk.SIZE + Chunk.SIZE / 2) - 1;
+            Vector3i position = new Vector3i(x, Math.floorDiv(surfaceY, Chunk.SIZE), z);
+            paletted[i] = new Chunk(position);
+            columns[i] = new Chunk(position);
+            Assertions.assertTrue(columns[i].convertToColumns());
+        }
+
+        long palettedBytes = 0, columnBytes = 0;
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            palettedBytes += paletted[i].estimateRetainedBytes();
+            columnBytes += columns[i].estimateRetainedBytes();
+        }
+        System.out.println("Retained bytes per chunk: paletted " + palettedBytes / CHUNK_COUNT + ", columns " + columnBytes / CHUNK_COUNT);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean print = round == ROUNDS - 1; // Earlier rounds warm up the JIT
+            long palettedLookup = timeLookups(paletted);
+            long columnLookup = timeLookups(columns);
+            long palettedDecode = timeDecode(paletted);
+            long columnDecode = timeDecode(columns);
+            long palettedMesh = timeMesh(paletted);
+            long columnMesh = timeMesh(columns);
+            if (print) {
+                System.out.println("Random getBlock: paletted " + palettedLookup / LOOKUPS + " ns, columns " + columnLookup / LOOKUPS + " ns");
+                System.out.println("Full decode per chunk: paletted " + palettedDecode / CHUNK_COUNT / 1_000 + " us, columns " + columnDecode / CHUNK_COUNT / 1_000 + " us");
+                System.out.println("Mesh per chunk: paletted " + palettedMesh / CHUNK_COUNT / 1_000 + " us, columns " + columnMesh / CHUNK_COUNT / 1_000 + " us");
+            }
+        }
+
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            paletted[i].generateMesh(null);
+            columns[i].generateMesh(null);
+            Assertions.assertEquals(paletted[i].getEncodedData().size(), columns[i].getEncodedData().size());
+        }
+    }
+
+    private static long timeLookups(Chunk[] chunks) {
+        Random random = new Random(42);
+        long checksum = 0;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            checksum += chunks[random.nextInt(CHUNK_COUNT)].getBlock(random.nextInt(Chunk.SIZE), random.nextInt(Chunk.SIZE), random.nextInt(Chunk.SIZE));
+        }
+        long time = System.nanoTime() - startTime;
+        Assertions.assertTrue(checksum >= 0);
+        return time;
+    }
+
+    private static long timeDecode(Chunk[] chunks) {
+        short[] blocks = new short[Chunk.TOTAL_BLOCKS];
+        long startTime = System.nanoTime();
+        for (Chunk chunk : chunks) {
+            chunk.getBlocks(blocks);
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private static long timeMesh(Chunk[] chunks) {
+        long startTime = System.nanoTime();
+        for (Chunk chunk : chunks) {
+            chunk.generateMesh(null);
+        }
+        return System.nanoTime() - startTime;
+    }
+}
@@ -0,0 +1,81 @@
+import game.Chunk;
+import game.utils.FaceCulling;
+import game.utils.FaceDirection;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class FaceCullingTest {
+
+    private static final int ALL_FACES = (1 << FaceDirection.values().length) - 1;
+
+    @Test
+    void cameraInsideChunkSeesEveryDirection() {
+        Vector3i chunk = new Vector3i(3, -1, 7);
+        Assertions.assertEquals(ALL_FACES, FaceCulling.getVisibleFaces(chunk, chunk));
+    }
+
+    @Test
+    void directionsPointingAwayFromCameraAreCulled() {
+        Vector3i chunk = new Vector3i(0, 0, 0);
+
+        int visibleFaces = FaceCulling.getVisibleFaces(chunk, new Vector3i(5, 0, 0));
+        Assertions.assertEquals(ALL_FACES & ~bit(FaceDirection.LEFT), visibleFaces);
+
+        // Diagonal camera: only the three directions pointing towards it remain
+        visibleFaces = FaceCulling.getVisibleFaces(chunk, new Vector3i(-2, 4, 1));
+        Assertions.assertEquals(bit(FaceDirection.LEFT) | bit(FaceDirection.TOP) | bit(FaceDirection.FRONT), visibleFaces);
+    }
+
+    @Test
+    void frontFacingFacesAreNeverCulled() {
+        Random random = new Random(11);
+        int culled = 0;
+        for (int i = 0; i < 100_000; i++) {
+            Vector3i chunk = new Vector3i(random.nextInt(9) - 4, random.nextInt(9) - 4, random.nextInt(9) - 4);
+            Vector3i cameraChunk = new Vector3i(random.nextInt(9) - 4, random.nextInt(9) - 4, random.nextInt(9) - 4);
+            float[] camera = {
+                    (cameraChunk.x + random.nextFloat()) * Chunk.SIZE,
+                    (cameraChunk.y + random.nextFloat()) * Chunk.SIZE,
+                    (cameraChunk.z + random.nextFloat()) * Chunk.SIZE
+            };
+            int[] block = {
+                    chunk.x * Chunk.SIZE + random.nextInt(Chunk.SIZE),
+                    chunk.y * Chunk.SIZE + random.nextInt(Chunk.SIZE),
+                    chunk.z * Chunk.SIZE + random.nextInt(Chunk.SIZE)
+            };
+            FaceDirection face = FaceDirection.values()[random.nextInt(FaceDirection.values().length)];
+
+            // The face lies on the block side its direction points to, and is seen from that side only
+            int[] offset = {face.getOffsetX(), face.getOffsetY(), face.getOffsetZ()};
+            int axis = offset[0] != 0 ? 0 : offset[1] != 0 ? 1 : 2;
+            float plane = block[axis] + (offset[axis] > 0 ? 1 : 0);
+            boolean isFrontFacing = (camera[axis] - plane) * offset[axis] > 0;
+
+            boolean isDrawn = (FaceCulling.getVisibleFaces(chunk, cameraChunk) & bit(face)) != 0;
+            if (isFrontFacing) {
+                Assertions.assertTrue(isDrawn, "Face " + face + " of chunk " + chunk + " culled for camera chunk " + cameraChunk);
+            }
+            if (!isDrawn) culled++;
+        }
+        Assertions.assertTrue(culled > 0);
+    }
+
+    @Test
+    void regionsAreCulledAgainstTheirWholeExtent() {
+        // Region of 4 chunks per axis starting at (0, 0, 0): the camera chunk is behind its first chunk along X+
+        // only once past X = -1, and behind its last chunk along X- only once past X = 4
+        Vector3i region = new Vector3i(0, 0, 0);
+        Assertions.assertEquals(ALL_FACES, FaceCulling.getVisibleFaces(region, 4, new Vector3i(2, 3, 1)));
+        Assertions.assertEquals(ALL_FACES & ~bit(FaceDirection.LEFT), FaceCulling.getVisibleFaces(region, 4, new Vector3i(4, 0, 0)));
+        Assertions.assertEquals(ALL_FACES & ~bit(FaceDirection.RIGHT), FaceCulling.getVisibleFaces(region, 4, new Vector3i(-1, 0, 0)));
+        Assertions.assertEquals(FaceCulling.getVisibleFaces(region, new Vector3i(-3, 7, 2)),
+                FaceCulling.getVisibleFaces(region, 1, new Vector3i(-3, 7, 2)));
+    }
+
+    private static int bit(FaceDirection face) {
+        return 1 << face.ordinal();
+    }
+}
@@ -0,0 +1,41 @@
+import game.Chunk;
+import game.utils.GenerationEngine;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+
+public class GenerationBenchmarkTest {
+
+    private static final int ROUNDS = 30;
+    private static final int CHUNKS_PER_ROUND = 20;
+
+    @Test
+    void measureGenerationTime() {
+        int nextColumn = 0;
+        long freshColumn = Long.MAX_VALUE, sharedColumn = Long.MAX_VALUE;
+        // The minimum over the rounds, the first ones warming up the JIT and the noise
+        for (int round = 0; round < ROUNDS; round++) {
+            long freshTime = 0, sharedTime = 0;
+            for (int i = 0; i < CHUNKS_PER_ROUND; i++, nextColumn++) {
+                // Surface layer of a column never generated before, then the chunk under it, whose heightmap is shared
+                int x = 1000 + nextColumn * 3;
+                freshTime += time(new Vector3i(x, 0, 7));
+                sharedTime += time(new Vector3i(x, -1, 7));
+            }
+            freshColumn = Math.min(freshColumn, freshTime / CHUNKS_PER_ROUND);
+            sharedColumn = Math.min(sharedColumn, sharedTime / CHUNKS_PER_ROUND);
+        }
+        System.out.println("Chunk generation time: new column " + freshColumn / 1_000 + " us, shared column " + sharedColumn / 1_000 + " us");
+    }
+
+    /**
+     * Times the generator alone, the chunk being allocated before.
+     */
+    private static long time(Vector3i position) {
+        Chunk chunk = new Chunk(position, 0, (short) 0);
+        long startTime = System.nanoTime();
+        GenerationEngine.generateChunkData(chunk);
+        long time = System.nanoTime() - startTime;
+        chunk.free();
+        return time;
+    }
+}
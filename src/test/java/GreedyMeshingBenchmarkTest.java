@@ -0,0 +1,92 @@
+import game.Chunk;
+import game.ChunkMesher;
+import game.ChunkSnapshot;
+import game.utils.FaceDirection;
+import game.utils.NativeLongBuffer;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class GreedyMeshingBenchmarkTest {
+
+    private static final int CHUNKS_PER_AXIS = 4;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void compareGreedyAndPerFaceMeshing() {
+        Map<Vector3i, Chunk> chunks = new HashMap<>();
+        for (int x = 0; x < CHUNKS_PER_AXIS; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = 0; z < CHUNKS_PER_AXIS; z++) {
+                    Vector3i position = new Vector3i(x, y, z);
+                    chunks.put(position, new Chunk(position));
+                }
+            }
+        }
+
+        List<ChunkSnapshot> snapshots = new ArrayList<>();
+        List<ChunkSnapshot[]> neighbors = new ArrayList<>();
+        for (Map.Entry<Vector3i, Chunk> entry : chunks.entrySet()) {
+            ChunkSnapshot[] neighborSnapshots = new ChunkSnapshot[FaceDirection.values().length];
+            for (FaceDirection face : FaceDirection.values()) {
+                Chunk neighbor = chunks.get(new Vector3i(entry.getKey()).add(face.getOffset()));
+                neighborSnapshots[face.ordinal()] = neighbor != null ? neighbor.snapshot() : null;
+            }
+            snapshots.add(entry.getValue().snapshot());
+            neighbors.add(neighborSnapshots);
+        }
+
+        long perFaceCount = 0, greedyCount = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean print = round == ROUNDS - 1; // Earlier rounds warm up the JIT
+            NativeLongBuffer faces = new NativeLongBuffer();
+
+            perFaceCount = 0;
+            long startTime = System.nanoTime();
+            for (int i = 0; i < snapshots.size(); i++) {
+                faces.clear();
+                ChunkMesher.mesh(faces, snapshots.get(i), neighbors.get(i), ChunkMesher.Mode.VOXEL);
+                perFaceCount += faces.size();
+            }
+            long perFaceTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int i = 0; i < snapshots.size(); i++) {
+                faces.clear();
+                ChunkMesher.mesh(faces, snapshots.get(i), neighbors.get(i), ChunkMesher.Mode.BINARY);
+            }
+            long binaryTime = System.nanoTime() - startTime;
+
+            greedyCount = 0;
+            startTime = System.nanoTime();
+            for (int i = 0; i < snapshots.size(); i++) {
+                faces.clear();
+                ChunkMesher.mesh(faces, snapshots.get(i), neighbors.get(i), ChunkMesher.Mode.GREEDY);
+                greedyCount += faces.size();
+            }
+            long greedyTime = System.nanoTime() - startTime;
+            faces.free();
+
+            if (print) {
+                System.out.println("Quads: per face " + perFaceCount + ", greedy " + greedyCount);
+                System.out.println("Mesh per chunk: per face " + perFaceTime / snapshots.size() / 1_000 + " us, binary " + binaryTime / snapshots.size() / 1_000
+                        + " us, greedy " + greedyTime / snapshots.size() / 1_000 + " us");
+            }
+        }
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            snapshots.get(i).close();
+            for (ChunkSnapshot neighbor : neighbors.get(i)) {
+                if (neighbor != null) neighbor.close();
+            }
+        }
+
+        Assertions.assertTrue(greedyCount > 0);
+        Assertions.assertTrue(greedyCount * 2 < perFaceCount);
+    }
+}
@@ -0,0 +1,52 @@
+import game.Chunk;
+import game.utils.GenerationEngine;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HeightBoundsTest {
+
+    @Test
+    void uniformBlockMatchesGeneratedChunks() {
+        // The cube loaded at render distance 8 around the origin
+        int uniformCount = 0, total = 0;
+        for (int y = -8; y <= 8; y++) {
+            for (int x = -8; x <= 8; x++) {
+                for (int z = -8; z <= 8; z++) {
+                    Vector3i position = new Vector3i(x, y, z);
+                    short blockId = GenerationEngine.getUniformBlock(position, 0);
+                    total++;
+                    if (blockId < 0) continue;
+                    uniformCount++;
+                    // Only the chunks around the surface are generated, the others would be uniform anyway
+                    if (Math.abs(y) > 2) continue;
+                    assertUniform(new Chunk(position), blockId);
+                }
+            }
+        }
+        System.out.println("Uniform chunks at render distance 8: " + uniformCount + " of " + total);
+        Assertions.assertTrue(uniformCount > total / 2);
+    }
+
+    @Test
+    void uniformBlockMatchesGeneratedRegions() {
+        for (int level = 1; level <= 2; level++) {
+            int regionSize = 1 << level;
+            for (int y = -2 * regionSize; y <= regionSize; y += regionSize) {
+                for (int x = -4 * regionSize; x < 4 * regionSize; x += regionSize) {
+                    Vector3i position = new Vector3i(x, y, 0);
+                    short blockId = GenerationEngine.getUniformBlock(position, level);
+                    if (blockId >= 0) {
+                        assertUniform(new Chunk(position, level), blockId);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertUniform(Chunk chunk, short blockId) {
+        Assertions.assertTrue(chunk.isUniform(), "chunk " + chunk.getPosition() + " at level " + chunk.getLodLevel());
+        Assertions.assertEquals(blockId, chunk.getUniformBlockId());
+        chunk.free();
+    }
+}
@@ -0,0 +1,42 @@
+import game.Chunk;
+import game.utils.GenerationEngine;
+import game.utils.HeightmapCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HeightmapCacheTest {
+
+    @Test
+    void columnIsGeneratedOnceAndOldestIsEvicted() {
+        AtomicInteger generated = new AtomicInteger();
+        HeightmapCache cache = new HeightmapCache(2, (columnX, columnZ, heights) -> {
+            generated.incrementAndGet();
+            heights[0] = columnX * 10 + columnZ;
+        });
+
+        int[] first = cache.getHeights(1, 2);
+        Assertions.assertSame(first, cache.getHeights(1, 2));
+        Assertions.assertEquals(12, first[0]);
+        Assertions.assertEquals(1, generated.get());
+
+        cache.getHeights(2, 2);
+        cache.getHeights(3, 2);
+        Assertions.assertEquals(2, cache.size());
+        cache.getHeights(1, 2);
+        Assertions.assertEquals(4, generated.get());
+    }
+
+    @Test
+    void heightmapMatchesTerrainHeight() {
+        HeightmapCache cache = new HeightmapCache(1, GenerationEngine::generateHeightmap);
+        int[] heights = cache.getHeights(-3, 5);
+        for (int x = -1; x <= Chunk.SIZE; x++) {
+            for (int z = -1; z <= Chunk.SIZE; z++) {
+                Assertions.assertEquals(GenerationEngine.getTerrainHeight(-3 * Chunk.SIZE + x, 5 * Chunk.SIZE + z),
+                        heights[HeightmapCache.getIndex(x, z)], "column " + x + ", " + z);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import game.Chunk;
+import game.ChunkMesher;
+import game.ChunkSnapshot;
+import game.MeshCache;
+import game.utils.FaceDirection;
+import game.utils.NativeLongBuffer;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+public class MeshCacheTest {
+
+    @Test
+    void leastRecentlyUsedEntryIsEvictedPastTheBudget() {
+        // Ten faces take 96 bytes plus the entry overhead, so two entries fit
+        MeshCache cache = new MeshCache(400);
+        NativeLongBuffer faces = new NativeLongBuffer();
+        for (int i = 1; i <= 10; i++) {
+            faces.add(i);
+        }
+        cache.put(1, faces, 0, 1_000);
+        cache.put(2, faces, 0, 1_000);
+
+        NativeLongBuffer fetched = new NativeLongBuffer();
+        Assertions.assertTrue(cache.fetch(1, fetched));
+        cache.put(3, faces, 0, 1_000);
+
+        Assertions.assertFalse(cache.fetch(2, fetched));
+        Assertions.assertTrue(cache.fetch(3, fetched));
+        Assertions.assertEquals(2, cache.getEntryCount());
+        Assertions.assertTrue(cache.getUsedBytes() <= 400);
+        Assertions.assertEquals(20, fetched.size());
+        Assertions.assertEquals(10, fetched.get(19));
+
+        faces.free();
+        fetched.free();
+    }
+
+    @Test
+    void regeneratedChunkReusesItsFaces() {
+        Assumptions.assumeTrue(ChunkMesher.CACHE.isEnabled());
+        Vector3i position = new Vector3i(3, 0, -2);
+        long[] first = meshDefault(new Chunk(position), position);
+        long hits = ChunkMesher.CACHE.getHits();
+        long[] second = meshDefault(new Chunk(position), position);
+
+        Assertions.assertTrue(first.length > 0);
+        Assertions.assertEquals(hits + 1, ChunkMesher.CACHE.getHits());
+        Assertions.assertArrayEquals(first, second);
+    }
+
+    private static long[] meshDefault(Chunk chunk, Vector3i position) {
+        ChunkSnapshot[] neighbors = new ChunkSnapshot[FaceDirection.values().length];
+        for (FaceDirection face : FaceDirection.values()) {
+            neighbors[face.ordinal()] = new Chunk(new Vector3i(position).add(face.getOffset())).snapshot();
+        }
+        NativeLongBuffer faces = new NativeLongBuffer();
+        try (ChunkSnapshot snapshot = chunk.snapshot()) {
+            ChunkMesher.mesh(faces, snapshot, neighbors);
+            return faces.toArray();
+        } finally {
+            faces.free();
+            for (ChunkSnapshot neighbor : neighbors) {
+                neighbor.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import game.Chunk;
+import game.ChunkMesher;
+import game.ChunkSnapshot;
+import game.utils.FaceDirection;
+import game.utils.NativeLongBuffer;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class PatchDifferentialTest {
+
+    private static final int EDITS = 300;
+    private static final int GROUND_HEIGHT = 16;
+
+    @Test
+    void patchedMeshMatchesFullRemesh() {
+        Random random = new Random(21);
+        // Flat ground made of large greedy quads, so that breaking them overflows the empty slots of their direction
+        Map<Vector3i, Chunk> chunks = new HashMap<>();
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = -1; z <= 1; z++) {
+                    Vector3i position = new Vector3i(x, y, z);
+                    Chunk chunk = new Chunk(position, 0, (short) (y < 0 ? 1 : 0));
+                    if (y == 0) {
+                        chunk.fillBox(0, 0, 0, Chunk.SIZE, GROUND_HEIGHT, Chunk.SIZE, (short) 1);
+                    }
+                    chunks.put(position, chunk);
+                }
+            }
+        }
+        Vector3i center = new Vector3i(0, 0, 0);
+        Chunk chunk = chunks.get(center);
+        Chunk[] neighbors = new Chunk[ChunkMesher.NEIGHBOR_COUNT];
+        for (int i = 0; i < neighbors.length; i++) {
+            neighbors[i] = chunks.get(ChunkMesher.getNeighborOffset(i).add(center));
+        }
+
+        NativeLongBuffer faces = new NativeLongBuffer();
+        int[] directionStarts = new int[FaceDirection.values().length + 1];
+        int[] dirtySlots = {Integer.MAX_VALUE, 0};
+        mesh(faces, chunk, neighbors);
+        ChunkMesher.partition(faces, directionStarts);
+
+        int boundaryEdits = 0, neighborEdits = 0, overflows = 0;
+        for (int edit = 0; edit < EDITS; edit++) {
+            // Local coordinates of the center chunk, -1 and Chunk.SIZE being blocks of its neighbors
+            int x = pickCoordinate(random);
+            int y = random.nextInt(3) == 0 ? GROUND_HEIGHT - 2 + random.nextInt(4) : pickCoordinate(random);
+            int z = pickCoordinate(random);
+            short blockId = (short) (random.nextBoolean() ? 0 : 1 + random.nextInt(4));
+
+            Vector3i owner = new Vector3i(Math.floorDiv(x, Chunk.SIZE), Math.floorDiv(y, Chunk.SIZE), Math.floorDiv(z, Chunk.SIZE));
+            chunks.get(owner).setBlock(Math.floorMod(x, Chunk.SIZE), Math.floorMod(y, Chunk.SIZE), Math.floorMod(z, Chunk.SIZE), blockId);
+            if (!owner.equals(center)) {
+                neighborEdits++;
+            } else if (x == 0 || x == Chunk.SIZE - 1 || y == 0 || y == Chunk.SIZE - 1 || z == 0 || z == Chunk.SIZE - 1) {
+                boundaryEdits++;
+            }
+
+            // As Chunk.patchMesh does: a direction out of empty slots gets the faces laid out again
+            if (!ChunkMesher.patch(faces, chunk, neighbors, x, y, z, directionStarts, dirtySlots)) {
+                ChunkMesher.partition(faces, directionStarts);
+                overflows++;
+            }
+
+            NativeLongBuffer expected = new NativeLongBuffer();
+            try {
+                mesh(expected, chunk, neighbors);
+                Assertions.assertArrayEquals(expand(expected), expand(faces), "Edit " + edit + " at " + x + ", " + y + ", " + z);
+            } finally {
+                expected.free();
+            }
+        }
+        faces.free();
+
+        Assertions.assertTrue(boundaryEdits > 0);
+        Assertions.assertTrue(neighborEdits > 0);
+        Assertions.assertTrue(overflows > 0);
+    }
+
+    /**
+     * Picks a coordinate on or next to the chunk boundary half of the time, anywhere in the chunk otherwise.
+     */
+    private static int pickCoordinate(Random random) {
+        if (random.nextBoolean()) {
+            int[] boundary = {-1, 0, 1, Chunk.SIZE - 2, Chunk.SIZE - 1, Chunk.SIZE};
+            return boundary[random.nextInt(boundary.length)];
+        }
+        return random.nextInt(Chunk.SIZE);
+    }
+
+    private static void mesh(NativeLongBuffer faces, Chunk chunk, Chunk[] neighbors) {
+        ChunkSnapshot[] neighborSnapshots = new ChunkSnapshot[neighbors.length];
+        try (ChunkSnapshot snapshot = chunk.snapshot()) {
+            for (int i = 0; i < neighbors.length; i++) {
+                neighborSnapshots[i] = neighbors[i].snapshot();
+            }
+            ChunkMesher.mesh(faces, snapshot, neighborSnapshots, ChunkMesher.Mode.GREEDY, ChunkMesher.AMBIENT_OCCLUSION);
+        } finally {
+            for (ChunkSnapshot neighborSnapshot : neighborSnapshots) {
+                if (neighborSnapshot != null) neighborSnapshot.close();
+            }
+        }
+    }
+
+    /**
+     * Expands the quads of a face buffer into single faces, with the occlusion of their quad, skipping empty slots.
+     *
+     * @return The single faces, sorted.
+     */
+    private static long[] expand(NativeLongBuffer faces) {
+        long[] singles = new long[faces.size()];
+        int count = 0;
+        for (int slot = 0; slot < faces.size(); slot++) {
+            long entry = faces.get(slot);
+            if (entry == 0) continue;
+
+            int face = (int) entry;
+            FaceDirection faceDir = FaceDirection.values()[(face >>> 15) & 0x7];
+            int width = ((face >>> 26) & 0x7) + 1;
+            int height = ((face >>> 29) & 0x7) + 1;
+            for (int v = 0; v < height; v++) {
+                for (int u = 0; u < width; u++) {
+                    // Quad axes: (x, z) for the faces along Y, (z, y) along X, (x, y) along Z
+                    int x = (face & 0x1F) + (faceDir.getOffsetX() != 0 ? 0 : u);
+                    int y = ((face >>> 5) & 0x1F) + (faceDir.getOffsetY() != 0 ? 0 : v);
+                    int z = ((face >>> 10) & 0x1F) + (faceDir.getOffsetY() != 0 ? v : faceDir.getOffsetX() != 0 ? u : 0);
+                    if (count == singles.length) singles = Arrays.copyOf(singles, count * 2 + 1);
+                    singles[count++] = (entry & ~(0x7FFFL | 0x3FL << 26)) | x | y << 5 | z << 10;
+                }
+            }
+        }
+        singles = Arrays.copyOf(singles, count);
+        Arrays.sort(singles);
+        return singles;
+    }
+}
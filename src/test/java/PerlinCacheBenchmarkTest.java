@@ -0,0 +1,117 @@
+import game.utils.FastNoiseLite;
+import game.utils.PerlinCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntBinaryOperator;
+
+public class PerlinCacheBenchmarkTest {
+
+    private static final long SEED = 154555112;
+    private static final int CACHE_SIZE = 1024 * 16;
+    private static final int COLUMNS_PER_THREAD = 4_000;
+    private static final int ROUNDS = 3;
+
+    @Test
+    void compareWithBoxedCache() throws InterruptedException {
+        for (int threads : new int[]{4, 8, 16, 32}) {
+            long boxedTime = 0, primitiveTime = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                // Earlier rounds warm up the JIT
+                boolean measure = round == ROUNDS - 1;
+                BoxedCache boxed = new BoxedCache(SEED, CACHE_SIZE);
+                long time = run(threads, (x, z) -> Float.floatToRawIntBits(boxed.getNoise(x, z)));
+                if (measure) boxedTime = time;
+
+                PerlinCache primitive = new PerlinCache(SEED, CACHE_SIZE);
+                time = run(threads, (x, z) -> Float.floatToRawIntBits(primitive.getNoise(x, z)));
+                if (measure) {
+                    primitiveTime = time;
+                    Assertions.assertTrue(primitive.getHits() > 0);
+                    System.out.println(threads + " threads, " + primitive.report());
+                }
+            }
+            System.out.println(threads + " threads, time per lookup: boxed " + boxedTime / lookups(threads) + " ns, primitive "
+                    + primitiveTime / lookups(threads) + " ns");
+        }
+    }
+
+    private static long lookups(int threads) {
+        return (long) threads * COLUMNS_PER_THREAD * 36;
+    }
+
+    /**
+     * Reads the 6 by 6 samples of chunk columns as the heightmap generator does, each thread walking its own
+     * strip of columns next to the strips of the other threads, so that the borders are read by two threads.
+     */
+    private static long run(int threads, IntBinaryOperator lookup) throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        int[] checksums = new int[threads];
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(new Thread(() -> {
+                int checksum = 0;
+                for (int column = 0; column < COLUMNS_PER_THREAD; column++) {
+                    int baseX = (column % 64) * 32;
+                    int baseZ = (thread * 2 + column / 64 % 3) * 32;
+                    for (int j = 0; j < 6; j++) {
+                        for (int i = 0; i < 6; i++) {
+                            checksum += lookup.applyAsInt(baseX - 8 + i * 8, baseZ - 8 + j * 8);
+                        }
+                    }
+                }
+                checksums[thread] = checksum;
+            }));
+            workers.get(t).setUncaughtExceptionHandler((worker, e) -> failures.add(e));
+        }
+        long startTime = System.nanoTime();
+        for (Thread worker : workers) worker.start();
+        for (Thread worker : workers) worker.join();
+        long time = System.nanoTime() - startTime;
+        if (!failures.isEmpty()) {
+            Assertions.fail(failures.size() + " of " + threads + " workers failed", failures.get(0));
+        }
+        return time;
+    }
+
+    /**
+     * The previous cache: boxed keys and values in a concurrent map, evicted in insertion order.
+     */
+    private static class BoxedCache {
+        private final ConcurrentHashMap<Long, Float> cache = new ConcurrentHashMap<>();
+        private final ConcurrentLinkedQueue<Long> order = new ConcurrentLinkedQueue<>();
+        private final FastNoiseLite noise = new FastNoiseLite();
+        private final int maxCacheSize;
+
+        private BoxedCache(long seed, int maxCacheSize) {
+            noise.SetSeed((int) seed);
+            noise.SetNoiseType(FastNoiseLite.NoiseType.OpenSimplex2);
+            noise.SetFrequency(0.006f);
+            this.maxCacheSize = maxCacheSize;
+        }
+
+        private float getNoise(int x, int z) {
+            long key = (((long) x) << 32) | (z & 0xFFFFFFFFL);
+            Float cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            float value = noise.GetNoise(x, z);
+            cache.put(key, value);
+            order.add(key);
+            if (cache.size() > maxCacheSize) {
+                Long oldestKey = order.poll();
+                if (oldestKey != null) {
+                    cache.remove(oldestKey);
+                }
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import game.utils.PerlinCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PerlinCacheTest {
+
+    private static final long SEED = 154555112;
+
+    @Test
+    void referencedValueSurvivesEviction() {
+        // A single set of 8 slots
+        PerlinCache cache = new PerlinCache(SEED, 8);
+        Assertions.assertEquals(8, cache.getCapacity());
+        for (int i = 0; i < 8; i++) {
+            cache.getNoise(i, 0);
+        }
+        cache.getNoise(0, 0);
+        cache.getNoise(8, 0);
+
+        Assertions.assertEquals(1, cache.getHits());
+        cache.getNoise(0, 0);
+        Assertions.assertEquals(2, cache.getHits());
+        cache.getNoise(1, 0);
+        Assertions.assertEquals(2, cache.getHits());
+        Assertions.assertEquals(10, cache.getMisses());
+    }
+
+    @Test
+    void concurrentLookupsReturnTheNoise() throws InterruptedException {
+        int size = 64;
+        float[] expected = new float[size * size];
+        PerlinCache reference = new PerlinCache(SEED, size * size);
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = reference.getNoise(i % size, i / size);
+        }
+
+        // Far fewer slots than keys, so that slots are overwritten while other threads read them
+        PerlinCache cache = new PerlinCache(SEED, 64);
+        AtomicInteger mismatches = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                for (int n = 0; n < 200_000; n++) {
+                    int i = random.nextInt(expected.length);
+                    if (Float.floatToRawIntBits(cache.getNoise(i % size, i / size)) != Float.floatToRawIntBits(expected[i])) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        Assertions.assertEquals(0, mismatches.get());
+        Assertions.assertEquals(8 * 200_000, cache.getHits() + cache.getMisses());
+    }
+}
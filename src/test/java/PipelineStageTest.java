@@ -0,0 +1,70 @@
+import game.PipelineStage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PipelineStageTest {
+
+    @Test
+    void fullQueueRejectsUntilWorkersCatchUp() throws InterruptedException {
+        PipelineStage stage = new PipelineStage("test", 1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger done = new AtomicInteger();
+
+        // One task holds the only worker, two more fill the queue
+        Assertions.assertTrue(stage.trySubmit(() -> {
+            started.countDown();
+            awaitQuietly(release);
+            done.incrementAndGet();
+        }));
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(stage.trySubmit(done::incrementAndGet));
+        Assertions.assertTrue(stage.trySubmit(done::incrementAndGet));
+        Assertions.assertFalse(stage.trySubmit(done::incrementAndGet));
+
+        // A blocking submission goes through once the worker frees a slot
+        Thread producer = new Thread(() -> stage.submit(done::incrementAndGet));
+        producer.start();
+        release.countDown();
+        producer.join(5_000);
+        Assertions.assertFalse(producer.isAlive());
+
+        Assertions.assertTrue(stage.shutdown(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(4, done.get());
+        String report = stage.report();
+        Assertions.assertTrue(report.startsWith("test: 4 chunks"), report);
+    }
+
+    @Test
+    void shutdownFailsWhileTaskIgnoresInterrupts() throws InterruptedException {
+        PipelineStage stage = new PipelineStage("test", 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean release = new AtomicBoolean();
+
+        // Like a mesh task: busy, never checks the interrupt flag
+        Assertions.assertTrue(stage.trySubmit(() -> {
+            started.countDown();
+            while (!release.get()) {
+                Thread.onSpinWait();
+            }
+        }));
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assertions.assertFalse(stage.shutdown(50, TimeUnit.MILLISECONDS));
+
+        release.set(true);
+        Assertions.assertTrue(stage.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}